@@ -3,16 +3,29 @@ import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+// Safe to share between threads: every method holds the account's lock, which Bank also takes,
+// in a fixed order, to post both sides of a transfer at once.
 public class Account {
+    private static final AtomicLong lockOrders = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    // Fixed for the account's lifetime, unlike the id, so accounts are always locked in the same order.
+    private final long lockOrder = lockOrders.getAndIncrement();
     private int id;
-    private List<Transaction> transactions;
-    private static int counter = 0;
+    private TransactionSlots transactions;
+    private VendorLookup transactionsByVendor;
+    private RunningTotals totals;
+    private static volatile IdAllocator idAllocator = new BlockIdAllocator();
 
     public Account() {
-        this.id = ++counter;
-        this.transactions = new ArrayList<>();
+        this.id = idAllocator.next();
+        this.transactions = new TransactionSlots(new ArrayList<>());
+        this.transactionsByVendor = new VendorLookup();
+        this.totals = new RunningTotals();
     }
 
     public int getId() {
@@ -21,48 +34,117 @@ public class Account {
 
     public void setId(int id) {
         this.id = id;
+        idAllocator.advancePast(id);
     }
 
+    public static IdAllocator getIdAllocator() {
+        return idAllocator;
+    }
+
+    public static void setIdAllocator(IdAllocator allocator) {
+        idAllocator = allocator;
+    }
+
+    // A copy, since other threads may post to the account while the caller reads it.
     public List<Transaction> getTransactions() {
-        return transactions;
+        lock.lock();
+        try {
+            return Collections.unmodifiableList(new ArrayList<>(transactions));
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void addTransaction(Transaction transaction) {
-        transactions.add(transaction);
+        lock.lock();
+        try {
+            transactions.add(transaction);
+            transactionsByVendor.add(transaction);
+            totals.add(transaction.getMoney());
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void removeTransaction(Transaction transaction) {
-        transactions.remove(transaction);
+        lock.lock();
+        try {
+            if (transactions.delete(transaction) != null) {
+                transactionsByVendor.remove(transaction);
+                totals.remove(transaction.getMoney());
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     public BigDecimal getBalance() {
-        BigDecimal balance = BigDecimal.ZERO;
-        for (Transaction transaction : transactions) {
-            balance = balance.add(transaction.getAmount());
+        lock.lock();
+        try {
+            return totals.getBalance();
+        } finally {
+            lock.unlock();
         }
-        return balance;
     }
 
+    public BigDecimal getDepositTotal() {
+        lock.lock();
+        try {
+            return totals.getDepositTotal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public BigDecimal getPaymentTotal() {
+        lock.lock();
+        try {
+            return totals.getPaymentTotal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getTransactionCount() {
+        lock.lock();
+        try {
+            return totals.getCount();
+        } finally {
+            lock.unlock();
+        }
+    }
 
     public List<Transaction> getTransactionsByDateRange(LocalDate startDate, LocalDate endDate) {
-        List<Transaction> result = new ArrayList<>();
-        for (Transaction transaction : transactions) {
-            LocalDate date = (LocalDate) transaction.getDate();
-            if (date.isEqual(startDate) || date.isEqual(endDate) || (date.isAfter(startDate) && date.isBefore(endDate))) {
-                result.add(transaction);
+        lock.lock();
+        try {
+            List<Transaction> result = new ArrayList<>();
+            for (Transaction transaction : transactions) {
+                LocalDate date = (LocalDate) transaction.getDate();
+                if (date.isEqual(startDate) || date.isEqual(endDate) || (date.isAfter(startDate) && date.isBefore(endDate))) {
+                    result.add(transaction);
+                }
             }
+            return result;
+        } finally {
+            lock.unlock();
         }
-        return result;
     }
 
     public List<Transaction> getTransactionsByVendor(String vendor) {
-        List<Transaction> result = new ArrayList<>();
-        for (Transaction transaction : transactions) {
-            if (transaction.getVendor().equals(vendor)) {
-                result.add(transaction);
-            }
+        lock.lock();
+        try {
+            return transactionsByVendor.get(vendor);
+        } finally {
+            lock.unlock();
         }
-        return result;
+    }
+
+    ReentrantLock lock() {
+        return lock;
+    }
+
+    long lockOrder() {
+        return lockOrder;
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,116 @@
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Transactions ordered by amount. Buckets are keyed by the amount in cents, rounded down and clamped
+// to the long range; since that key never decreases as the amount grows, only the buckets at either
+// end of a range can hold amounts outside it and need an exact comparison.
+public class AmountIndex {
+    private static final int KEY_SCALE = 2;
+    // Buckets hold amounts within the same cent, which only differ when an amount has sub-cent digits.
+    // Ties are broken by id, and by identity for transactions whose ids collide, so a bucket stays in
+    // order as it changes and a transaction is found in it without a scan.
+    private static final Comparator<Transaction> BY_AMOUNT = Comparator.comparing(Transaction::getMoney)
+            .thenComparingInt(Transaction::getId)
+            .thenComparingInt(System::identityHashCode);
+
+    private final NavigableMap<Long, NavigableSet<Transaction>> transactionsByAmount = new TreeMap<>();
+
+    static long key(Money amount) {
+        return amount.floorUnits(KEY_SCALE);
+    }
+
+    public void add(Transaction transaction) {
+        transactionsByAmount.computeIfAbsent(key(transaction.getMoney()), key -> new TreeSet<>(BY_AMOUNT)).add(transaction);
+    }
+
+    public void remove(Transaction transaction) {
+        long key = key(transaction.getMoney());
+        NavigableSet<Transaction> bucket = transactionsByAmount.get(key);
+        if (bucket != null && bucket.remove(transaction) && bucket.isEmpty()) {
+            transactionsByAmount.remove(key);
+        }
+    }
+
+    // Returns transactions whose amount equals the given one, scale included, as BigDecimal.equals does.
+    public List<Transaction> get(BigDecimal amount) {
+        return get(Money.of(amount));
+    }
+
+    public List<Transaction> get(Money amount) {
+        List<Transaction> result = new ArrayList<>();
+        NavigableSet<Transaction> bucket = transactionsByAmount.get(key(amount));
+        if (bucket != null) {
+            for (Transaction transaction : bucket) {
+                if (transaction.getMoney().equals(amount)) {
+                    result.add(transaction);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Returns transactions with min <= amount <= max, in ascending order of amount.
+    public List<Transaction> range(BigDecimal min, BigDecimal max) {
+        return range(Money.of(min), Money.of(max));
+    }
+
+    public List<Transaction> range(Money min, Money max) {
+        List<Transaction> result = new ArrayList<>();
+        if (min.compareTo(max) > 0) {
+            return result;
+        }
+        long minKey = key(min);
+        long maxKey = key(max);
+        for (Map.Entry<Long, NavigableSet<Transaction>> entry : transactionsByAmount.subMap(minKey, true, maxKey, true).entrySet()) {
+            if (entry.getKey() != minKey && entry.getKey() != maxKey) {
+                result.addAll(entry.getValue());
+                continue;
+            }
+            for (Transaction transaction : entry.getValue()) {
+                if (transaction.getMoney().compareTo(min) >= 0 && transaction.getMoney().compareTo(max) <= 0) {
+                    result.add(transaction);
+                }
+            }
+        }
+        return result;
+    }
+
+    public Transaction lowest() {
+        return transactionsByAmount.isEmpty() ? null : transactionsByAmount.firstEntry().getValue().first();
+    }
+
+    public Transaction highest() {
+        return transactionsByAmount.isEmpty() ? null : transactionsByAmount.lastEntry().getValue().last();
+    }
+
+    // Returns the n lowest transactions, lowest first.
+    public List<Transaction> lowest(int n) {
+        return first(transactionsByAmount.values(), n, false);
+    }
+
+    // Returns the n highest transactions, highest first.
+    public List<Transaction> highest(int n) {
+        return first(transactionsByAmount.descendingMap().values(), n, true);
+    }
+
+    private static List<Transaction> first(Collection<NavigableSet<Transaction>> buckets, int n, boolean descending) {
+        List<Transaction> result = new ArrayList<>(Math.max(n, 0));
+        for (NavigableSet<Transaction> bucket : buckets) {
+            for (Transaction transaction : descending ? bucket.descendingSet() : bucket) {
+                if (result.size() >= n) {
+                    return result;
+                }
+                result.add(transaction);
+            }
+        }
+        return result;
+    }
+}
@@ -1,10 +1,21 @@
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+// Customers are held in a ConcurrentHashMap, whose bins are locked independently, so threads adding
+// and looking up customers do not contend on one lock. Transfers lock the accounts they touch in
+// their fixed lock order, so transfers over overlapping accounts never deadlock.
 public class Bank {
-    private static int idCounter = 0;
+    private static final String TRANSFER_TYPE = "Transfer";
+    private static final Comparator<Account> LOCK_ORDER = Comparator.comparingLong(Account::lockOrder);
+    private static volatile IdAllocator idAllocator = new BlockIdAllocator();
     private int id;
     private String name;
     private String address;
@@ -12,11 +23,11 @@ public class Bank {
     private Map<Integer, Customer> customers;
 
     public Bank(String name, String address, String phoneNumber) {
-        this.id = generateUniqueId();
+        this.id = idAllocator.next();
         this.name = name;
         this.address = address;
         this.phoneNumber = phoneNumber;
-        this.customers = new HashMap<>();
+        this.customers = new ConcurrentHashMap<>();
     }
 
     public int getId() {
@@ -25,10 +36,15 @@ public class Bank {
 
     public void setId(int id) {
         this.id = id;
+        idAllocator.advancePast(id);
     }
 
-    private static synchronized int generateUniqueId() {
-        return ++idCounter;
+    public static IdAllocator getIdAllocator() {
+        return idAllocator;
+    }
+
+    public static void setIdAllocator(IdAllocator allocator) {
+        idAllocator = allocator;
     }
 
     public String getName() {
@@ -54,4 +70,112 @@ public class Bank {
     public Customer getCustomerById(int customerId) {
         return customers.get(customerId);
     }
-}
\ No newline at end of file
+
+    // Posts a debit of the amount to one customer's account and a matching credit to the other's,
+    // both under the two accounts' locks, so no reader sees one without the other.
+    public void transfer(int fromCustomerId, int toCustomerId, BigDecimal amount, String description) {
+        Customer from = customerOf(fromCustomerId);
+        Customer to = customerOf(toCustomerId);
+        Money money = transferAmount(amount);
+        Account fromAccount = accountOf(from);
+        Account toAccount = accountOf(to);
+        if (fromAccount == toAccount) {
+            throw new IllegalArgumentException("Cannot transfer from an account to itself");
+        }
+        LocalDate date = LocalDate.now();
+        LocalTime time = LocalTime.now();
+        Transaction debit = transferTransaction(money.negate(), date, time, description, to);
+        Transaction credit = transferTransaction(money, date, time, description, from);
+        Account first = fromAccount.lockOrder() < toAccount.lockOrder() ? fromAccount : toAccount;
+        Account second = first == fromAccount ? toAccount : fromAccount;
+        first.lock().lock();
+        try {
+            second.lock().lock();
+            try {
+                fromAccount.addTransaction(debit);
+                toAccount.addTransaction(credit);
+            } finally {
+                second.lock().unlock();
+            }
+        } finally {
+            first.lock().unlock();
+        }
+    }
+
+    // Settles every transfer as one step: all are checked before any is posted, then each account
+    // involved is locked once, in lock order, while all of them are posted. So a batch either posts
+    // in full or, if any transfer is invalid, not at all, and no reader sees it half done.
+    public void transferAll(List<Transfer> transfers) {
+        int count = transfers.size();
+        Account[] fromAccounts = new Account[count];
+        Account[] toAccounts = new Account[count];
+        Transaction[] debits = new Transaction[count];
+        Transaction[] credits = new Transaction[count];
+        Set<Account> involved = new HashSet<>();
+        LocalDate date = LocalDate.now();
+        LocalTime time = LocalTime.now();
+        for (int i = 0; i < count; i++) {
+            Transfer transfer = transfers.get(i);
+            Customer from = customerOf(transfer.getFromCustomerId());
+            Customer to = customerOf(transfer.getToCustomerId());
+            Money money = transferAmount(transfer.getAmount());
+            fromAccounts[i] = accountOf(from);
+            toAccounts[i] = accountOf(to);
+            if (fromAccounts[i] == toAccounts[i]) {
+                throw new IllegalArgumentException("Cannot transfer from an account to itself");
+            }
+            debits[i] = transferTransaction(money.negate(), date, time, transfer.getDescription(), to);
+            credits[i] = transferTransaction(money, date, time, transfer.getDescription(), from);
+            involved.add(fromAccounts[i]);
+            involved.add(toAccounts[i]);
+        }
+        List<Account> locked = new ArrayList<>(involved);
+        locked.sort(LOCK_ORDER);
+        int held = 0;
+        try {
+            for (Account account : locked) {
+                account.lock().lock();
+                held++;
+            }
+            for (int i = 0; i < count; i++) {
+                fromAccounts[i].addTransaction(debits[i]);
+                toAccounts[i].addTransaction(credits[i]);
+            }
+        } finally {
+            for (int i = held - 1; i >= 0; i--) {
+                locked.get(i).lock().unlock();
+            }
+        }
+    }
+
+    private Customer customerOf(int customerId) {
+        Customer customer = customers.get(customerId);
+        if (customer == null) {
+            throw new IllegalArgumentException("No customer with id " + customerId);
+        }
+        return customer;
+    }
+
+    private static Account accountOf(Customer customer) {
+        Account account = customer.getAccount();
+        if (account == null) {
+            throw new IllegalArgumentException("Customer " + customer.getId() + " has no account");
+        }
+        return account;
+    }
+
+    private static Money transferAmount(BigDecimal amount) {
+        if (amount == null || amount.signum() <= 0) {
+            throw new IllegalArgumentException("Transfer amount must be positive: " + amount);
+        }
+        return Money.of(amount);
+    }
+
+    // Vendor is the other side of the transfer, as it is the payee or payer of the posting.
+    private static Transaction transferTransaction(Money amount, LocalDate date, LocalTime time, String description,
+                                                   Customer counterparty) {
+        Transaction transaction = new Transaction(amount, date, time, description, counterparty.getName());
+        transaction.setType(TRANSFER_TYPE);
+        return transaction;
+    }
+}
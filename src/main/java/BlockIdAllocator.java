@@ -0,0 +1,86 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hands out ids from blocks taken from a shared counter, so threads only touch the counter once per
+// block instead of once per id. Blocks belong to stripes rather than threads, and each thread uses the
+// stripe its id picks: a thread per request would otherwise take a block for the one or two ids it
+// needs, and leave the rest unused. A thread gets increasing ids; ids left in a block when it is
+// replaced, or when the allocator is saved, are skipped, never reused.
+public class BlockIdAllocator implements IdAllocator {
+    private static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final int blockSize;
+    // The first id not yet in any block.
+    private final AtomicLong reserved;
+    // The highest id passed to advancePast(); blocks holding ids at or below it are given up.
+    private final AtomicInteger floor = new AtomicInteger(Integer.MIN_VALUE);
+    // A power of two, so a thread id picks one with a mask.
+    private final Block[] stripes;
+
+    public BlockIdAllocator() {
+        this(1, DEFAULT_BLOCK_SIZE);
+    }
+
+    public BlockIdAllocator(int first, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.blockSize = blockSize;
+        this.reserved = new AtomicLong(first);
+        this.stripes = new Block[Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) * 2];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Block();
+        }
+    }
+
+    @Override
+    public int next() {
+        Block block = stripes[(int) Thread.currentThread().threadId() & (stripes.length - 1)];
+        synchronized (block) {
+            if (block.next >= block.end || block.next <= floor.get()) {
+                refill(block);
+            }
+            return (int) block.next++;
+        }
+    }
+
+    @Override
+    public void advancePast(int id) {
+        if (id <= floor.get()) {
+            return;
+        }
+        long needed = (long) id + 1;
+        for (long current = reserved.get(); current < needed; current = reserved.get()) {
+            if (reserved.compareAndSet(current, needed)) {
+                break;
+            }
+        }
+        floor.accumulateAndGet(id, Math::max);
+    }
+
+    @Override
+    public int limit() {
+        return (int) Math.min(reserved.get(), Integer.MAX_VALUE);
+    }
+
+    private void refill(Block block) {
+        while (true) {
+            long start = reserved.getAndAdd(blockSize);
+            if (start > Integer.MAX_VALUE) {
+                throw new IllegalStateException("No ids left up to " + Integer.MAX_VALUE);
+            }
+            long end = Math.min(start + blockSize, (long) Integer.MAX_VALUE + 1);
+            // A concurrent advancePast() can land inside the block just taken.
+            block.next = Math.max(start, (long) floor.get() + 1);
+            block.end = end;
+            if (block.next < block.end) {
+                return;
+            }
+        }
+    }
+
+    private static final class Block {
+        long next;
+        long end;
+    }
+}
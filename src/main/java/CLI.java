@@ -1,11 +1,7 @@
 import java.math.BigDecimal;
-import java.time.LocalDate;
-import java.time.LocalTime;
 import java.util.List;
 import java.util.Scanner;
 
-import static java.time.LocalTime.*;
-
 public class CLI {
     private final Scanner scanner;
     private final Ledger ledger;
@@ -57,7 +53,7 @@ public class CLI {
         String description = getInput("Please enter the description: ");
         String vendor = getInput("Please enter the vendor name: ");
         String amount = validateAmountInput("Please enter the amount: ");
-        Transaction deposit = new Transaction(date, time, description, vendor, String.valueOf(Double.parseDouble(amount)));
+        Transaction deposit = new Transaction(amount, date, time, description, vendor);
         ledger.addTransaction(deposit);
         try {
             csvFileHandler.writeTransactionToFile(deposit);
@@ -75,7 +71,7 @@ public class CLI {
         String description = getInput("Please enter the description: ");
         String vendor = getInput("Please enter the vendor name: ");
         String amount = validateAmountInput("Please enter the amount (negative number): ");
-        Transaction payment = new Transaction(date, time, description, vendor, String.valueOf(Double.parseDouble(amount)));
+        Transaction payment = new Transaction(amount, date, time, description, vendor);
         ledger.addTransaction(payment);
         try {
             csvFileHandler.writeTransactionToFile(payment);
@@ -146,7 +142,7 @@ public class CLI {
             System.out.println("Transaction not found.");
             return;
         }
-        Transaction newTransaction = new Transaction(date, time, description, vendor, String.valueOf(Double.parseDouble(amount)));
+        Transaction newTransaction = new Transaction(amount, date, time, description, vendor);
         ledger.updateTransaction(oldTransaction, newTransaction);
         try {
             csvFileHandler.updateTransactionInFile(oldTransaction, newTransaction);
@@ -216,7 +212,7 @@ public class CLI {
     private void filterTransactionsByAmountRangeScreen() {
         String minAmount = validateAmountInput("Please enter the minimum amount: ");
         String maxAmount = validateAmountInput("Please enter the maximum amount: ");
-        List<Transaction> transactions = ledger.getTransactionsByAmountRange(Double.parseDouble(minAmount), Double.parseDouble(maxAmount));
+        List<Transaction> transactions = ledger.getTransactionsByAmountRange(new BigDecimal(minAmount), new BigDecimal(maxAmount));
         displayTransactions(transactions);
     }
 
@@ -255,10 +251,10 @@ public class CLI {
         String input;
         do {
             input = getInput(prompt);
-            if (!Transaction.isValidDate(String.valueOf(LocalDate.parse(input)))) {
+            if (TransactionParser.parseDate(input, 0, input.length()) == null) {
                 System.out.println("Invalid date. Please try again.");
             }
-        } while (!Transaction.isValidDate(String.valueOf(LocalDate.parse(input))));
+        } while (TransactionParser.parseDate(input, 0, input.length()) == null);
         return input;
     }
 
@@ -266,10 +262,10 @@ public class CLI {
         String input;
         do {
             input = getInput(prompt);
-            if (!Transaction.isValidTime(String.valueOf(parse(input)))) {
+            if (TransactionParser.parseTime(input, 0, input.length()) == null) {
                 System.out.println("Invalid time. Please try again.");
             }
-        } while (!Transaction.isValidTime(String.valueOf(parse(input))));
+        } while (TransactionParser.parseTime(input, 0, input.length()) == null);
         return input;
     }
 
@@ -277,10 +273,10 @@ public class CLI {
         String input;
         do {
             input = getInput(prompt);
-            if (!Transaction.isValidAmount(String.valueOf(Double.parseDouble(input)))) {
+            if (TransactionParser.parseAmount(input, 0, input.length()) == null) {
                 System.out.println("Invalid amount. Please try again.");
             }
-        } while (!Transaction.isValidAmount(String.valueOf(Double.parseDouble(input))));
+        } while (TransactionParser.parseAmount(input, 0, input.length()) == null);
         return input;
     }
 
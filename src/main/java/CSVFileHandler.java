@@ -1,218 +1,718 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDate;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.Arrays;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class CSVFileHandler {
+    private static final long PARALLEL_IMPORT_THRESHOLD = 64L * 1024 * 1024;
+    private static final double DEFAULT_COMPACTION_THRESHOLD = 0.25;
+    private static final int COMPACTION_MIN_RECORDS = 1000;
+    private static final int DEFAULT_COLD_SEGMENT_MONTHS = 12;
+    // Rows other processes appended that are kept for readAppendedTransactions() before the caller is
+    // told to read the file again instead.
+    private static final int MAX_UNREAD_APPENDED_ROWS = 10000;
+    // A FileLock only keeps other processes out, so the handlers of a file in this process also take
+    // turns through a shared AppendLock.
+    private static final Map<Path, AppendLock> APPEND_LOCKS = new ConcurrentHashMap<>();
+    // How long a handler's appends may keep joining its turn before it lets others have the file.
+    private static final long MAX_TURN_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final String fileName;
+    private final GroupCommitWriter.FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+    private GroupCommitWriter writer;
+    private String writerKey;
+    private TransactionJournal journal;
+    private String journalKey;
+    private int journalTurn;
+    // Set once the Transaction id allocator has been moved past the ids saved by an earlier run.
+    private boolean idsRestored;
+    private int rowCount = -1;
+    private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    private TransactionFileCompactor compaction;
+    // The file rows have been numbered up to; rows after it were appended by other processes.
+    private String tailFileKey;
+    private long tailOffset;
+    // Rows other processes appended that were numbered by this handler's own appends but not yet
+    // returned by readAppendedTransactions().
+    private final List<Transaction> unreadAppended = new ArrayList<>();
+    private boolean reloadNeeded;
+    private final AppendLock appendLock;
+    // Counts this handler's turns at the file, so what is only checked once a turn can tell.
+    private int turn;
+    // Set when a queued append failed, so the rows after the tail are counted again.
+    private volatile boolean appendFailed;
+    private FileChannel lockChannel;
+    private MonthPartitionedStore partitions;
+    private VendorIndex vendorIndex;
+    private int coldSegmentMonths = DEFAULT_COLD_SEGMENT_MONTHS;
+    // Shared by every read of this handler's file, so reloads and tailed rows reuse the same strings.
+    private final TransactionInterner interner = new TransactionInterner();
+
+    public CSVFileHandler(String fileName) {
+        this(fileName, GroupCommitWriter.FsyncPolicy.EVERY_BATCH, 0);
+    }
+
+    public CSVFileHandler(String fileName, GroupCommitWriter.FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) {
+        this.fileName = fileName;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.appendLock = APPEND_LOCKS.computeIfAbsent(lockPath().toAbsolutePath().normalize(), key -> new AppendLock());
+    }
 
-public class Transaction implements Comparable<Transaction> {
-    private static int nextId = 1;
-    private String type;
-    private int id;
-    private BigDecimal amount;
-    private LocalDate date;
-    private LocalTime time;
-    private String description;
-    private String vendor;
+    public List<Transaction> readTransactionsFromFile(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        if (Files.exists(path) && Files.size(path) >= PARALLEL_IMPORT_THRESHOLD) {
+            return readTransactionsFromFile(fileName, ForkJoinPool.commonPool());
+        }
+        synchronized (this) {
+            return whileWritten(() -> {
+                finishCompaction(false);
+                TransactionJournal journal = journalFor(path);
+                long length = Files.exists(path) ? Files.size(path) : 0;
+                List<Transaction> transactions = resolveRows(journal, MappedTransactionReader.read(path, length, interner));
+                if (journal != null) {
+                    resetTail(length);
+                }
+                return transactions;
+            });
+        }
+    }
 
-    public Transaction(BigDecimal amount, LocalDate date, LocalTime time, String description, String vendor) {
-        this.id = nextId++;
-        this.amount = amount;
-        this.date = date;
-        this.time = time;
-        this.description = description;
-        this.vendor = vendor;
-        this.type = "";
+    public synchronized List<Transaction> readTransactionsFromFile(String fileName, ForkJoinPool pool) throws IOException {
+        return whileWritten(() -> {
+            finishCompaction(false);
+            Path path = Paths.get(fileName);
+            TransactionJournal journal = journalFor(path);
+            long length = Files.exists(path) ? Files.size(path) : 0;
+            List<Transaction> transactions = resolveRows(journal, ParallelTransactionImporter.read(path, pool, length, interner));
+            if (journal != null) {
+                resetTail(length);
+            }
+            return transactions;
+        });
     }
 
+    // Hands each row to the action instead of collecting them, for callers that keep their own storage.
+    public synchronized void readTransactionsFromFile(String fileName, Consumer<Transaction> action) throws IOException {
+        whileWritten(() -> {
+            readRows(fileName, action);
+            return null;
+        });
+    }
 
-    public Transaction(String amount, String date, String time, String description, String vendor) throws InvalidInputException {
-        if (!isValidDate(date)) {
-            throw new InvalidInputException("Invalid date format");
+    private void readRows(String fileName, Consumer<Transaction> action) throws IOException {
+        finishCompaction(false);
+        Path path = Paths.get(fileName);
+        TransactionJournal journal = journalFor(path);
+        long length = Files.exists(path) ? Files.size(path) : 0;
+        int[] rows = new int[1];
+        if (length > 0) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                new MappedTransactionReader(interner).read(channel, 0, Math.min(length, channel.size()), transaction -> {
+                    transaction.setId(idOf(journal, ++rows[0]));
+                    Transaction resolved = journal != null ? journal.resolve(transaction) : transaction;
+                    if (resolved != null) {
+                        action.accept(resolved);
+                    }
+                });
+            }
         }
-        if (!isValidAmount(amount)) {
-            throw new InvalidInputException("Invalid amount");
+        if (journal != null) {
+            rowCount = rows[0];
+            resetTail(length);
         }
-        if (!isValidTime(time)) {
-            throw new InvalidInputException("Invalid time format");
+    }
+
+    // Returns the complete rows other processes appended since the file was last read, or null if the
+    // file was truncated or replaced and has to be read again in full.
+    public synchronized List<Transaction> readAppendedTransactions() throws IOException {
+        return whileWritten(this::takeAppended);
+    }
+
+    private List<Transaction> takeAppended() throws IOException {
+        finishCompaction(false);
+        Path path = Paths.get(fileName);
+        if (reloadNeeded || !Files.exists(path) || tailFileKey == null || !tailFileKey.equals(fileKey(path))
+                || Files.size(path) < tailOffset) {
+            reloadNeeded = false;
+            unreadAppended.clear();
+            return null;
         }
+        List<Transaction> appended = new ArrayList<>(unreadAppended);
+        unreadAppended.clear();
+        // This handler's own rows are numbered and passed over as they are written, so everything
+        // after the tail was appended by someone else.
+        readAppended(path, appended);
+        return appended;
+    }
 
-        this.id = nextId++;
-        this.amount = new BigDecimal(amount);
-        this.date = LocalDate.parse(date, DateTimeFormatter.ISO_DATE);
-        this.time = LocalTime.parse(time, DateTimeFormatter.ISO_TIME);
-        this.description = description;
-        this.vendor = vendor;
-        this.type = "";
+    public void writeTransactionToFile(Transaction transaction) throws IOException {
+        GroupCommitWriter.await(writeTransactionToFileAsync(transaction));
     }
 
-    public static boolean isValidAmount(String amount) {
+    public synchronized CompletableFuture<Void> writeTransactionToFileAsync(Transaction transaction) throws IOException {
+        return append(List.of(transaction), (transaction.toCSV() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Appends the rows as one record, so a batch costs one queue entry and one write. The rows are
+    // formatted before taking the lock, since their ids are not part of them.
+    public CompletableFuture<Void> writeTransactionsToFileAsync(List<Transaction> transactions) throws IOException {
+        StringBuilder rows = new StringBuilder(transactions.size() * 64);
+        for (Transaction transaction : transactions) {
+            rows.append(transaction.toCSV()).append(System.lineSeparator());
+        }
+        byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            return append(transactions, bytes);
+        }
+    }
+
+    // Rows are numbered by their position in the file, which the journal maps to their ids. Other
+    // handlers and processes may append to the file too, so the rows are numbered during this
+    // handler's turn and queued to the writer, and the turn lasts until they are written. Appends made
+    // meanwhile join the turn: nothing else can have reached the file, so they are numbered on from
+    // the last without looking at it, and the writer puts all of them out in one write.
+    private CompletableFuture<Void> append(List<Transaction> transactions, byte[] rows) throws IOException {
+        CompletableFuture<Void> written;
+        boolean started = joinAppends();
         try {
-            new BigDecimal(amount, Locale.US);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+            if (started) {
+                catchUpWithFile();
+            }
+            TransactionJournal journal = journal();
+            for (Transaction transaction : transactions) {
+                transaction.setId(journal.idOf(++rowCount));
+            }
+            written = writer().append(rows, recordQueued());
+            tailOffset += rows.length;
+            written.whenComplete((ignored, e) -> {
+                if (e != null) {
+                    appendFailed = true;
+                }
+            });
+        } finally {
+            unlockAppends();
         }
+        finishCompaction(false);
+        return written;
     }
 
-    public List<Transaction> getTransactionsByDateRange(LocalDate startDate, LocalDate endDate) {
-        return getTransactionsByDateRange().stream()
-                .filter(transaction -> {
-                    LocalDate date = transaction.getDate();
-                    return (date.isEqual(startDate) || date.isAfter(startDate)) &&
-                            (date.isEqual(endDate) || date.isBefore(endDate));
-                })
-                .collect(Collectors.toList());
+    // Run as a turn starts: numbers whatever others appended to the file since this handler's last
+    // turn, and notices if they replaced it.
+    private void catchUpWithFile() throws IOException {
+        Path path = Paths.get(fileName);
+        if (writer != null && (!Files.exists(path) || !writerKey.equals(fileKey(path)))) {
+            // Another handler compacted the file; the writer would still append to the old one.
+            writer.close();
+            writer = null;
+        }
+        if (rowCount < 0 || appendFailed || tailFileKey == null || !Files.exists(path) || !tailFileKey.equals(fileKey(path))
+                || Files.size(path) < tailOffset) {
+            // Not read yet, replaced since, or not as this handler left it: the rows are numbered from
+            // the start of the file.
+            boolean replaced = tailFileKey != null;
+            appendFailed = false;
+            rowCount = forEachRow(path, row -> {
+            });
+            resetTail(sourceSize());
+            reloadNeeded = replaced;
+        } else {
+            readAppended(path, unreadAppended);
+            if (unreadAppended.size() > MAX_UNREAD_APPENDED_ROWS) {
+                unreadAppended.clear();
+                reloadNeeded = true;
+            }
+        }
     }
 
-    private List<Transaction> getTransactionsByDateRange() {
-        return null;
+    // Numbers the complete rows after the tail and moves the tail past them.
+    private void readAppended(Path path, List<Transaction> appended) throws IOException {
+        TransactionJournal journal = journal();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long end = MappedTransactionReader.lastLineEnd(channel, tailOffset, channel.size());
+            new MappedTransactionReader(interner).read(channel, tailOffset, end, transaction -> {
+                transaction.setId(journal.idOf(++rowCount));
+                appended.add(transaction);
+            });
+            tailOffset = end;
+        }
     }
 
-    public static boolean isValidDate(String date) {
-        try {
-            LocalDate.parse(date, DateTimeFormatter.ISO_DATE);
-            return true;
-        } catch (Exception e) {
-            return false;
+    public void deleteTransactionFromFile(Transaction transaction) throws IOException {
+        GroupCommitWriter.await(deleteTransactionFromFileAsync(transaction));
+    }
+
+    public synchronized CompletableFuture<Void> deleteTransactionFromFileAsync(Transaction transaction) throws IOException {
+        return whileLocked(() -> {
+            CompletableFuture<Void> written = journal().appendDelete(transaction.getId(), recordQueued());
+            if (partitions != null) {
+                partitions.recordChange(journal.getRecordCount(), (LocalDate) transaction.getDate());
+            }
+            afterJournalAppend();
+            return written;
+        });
+    }
+
+    public void updateTransactionInFile(Transaction oldTransaction, Transaction newTransaction) throws IOException {
+        GroupCommitWriter.await(updateTransactionInFileAsync(oldTransaction, newTransaction));
+    }
+
+    public synchronized CompletableFuture<Void> updateTransactionInFileAsync(Transaction oldTransaction, Transaction newTransaction)
+            throws IOException {
+        return whileLocked(() -> {
+            newTransaction.setId(oldTransaction.getId());
+            CompletableFuture<Void> written = journal().appendUpdate(newTransaction, recordQueued());
+            if (partitions != null) {
+                partitions.recordChange(journal.getRecordCount(), (LocalDate) oldTransaction.getDate(),
+                        (LocalDate) newTransaction.getDate());
+            }
+            afterJournalAppend();
+            return written;
+        });
+    }
+
+    public synchronized void setCompactionThreshold(double deadRowRatio) {
+        this.compactionThreshold = deadRowRatio;
+    }
+
+    // Segments older than this many months are kept gzipped.
+    public synchronized void setColdSegmentAge(int months) {
+        this.coldSegmentMonths = months;
+        if (partitions != null) {
+            partitions.setColdAfterMonths(months);
         }
     }
 
+    public synchronized List<Transaction> searchTransactionsByDate(LocalDate startDate, LocalDate endDate) throws IOException {
+        return whileWritten(() -> partitions().search(startDate, endDate, journal));
+    }
 
-    public int getId() {
-        return id;
+    public List<Transaction> getByDateRange(String startDate, String endDate) throws IOException {
+        return searchTransactionsByDate(LocalDate.parse(startDate), LocalDate.parse(endDate));
     }
 
-    public void setId(int id) {
-        this.id = id;
+    public synchronized BigDecimal getMonthTotal(YearMonth month) throws IOException {
+        return whileWritten(() -> partitions().total(month, journal));
     }
 
-    public BigDecimal getAmount() {
-        return amount;
+    public synchronized List<Transaction> searchTransactionsByVendor(String vendor) throws IOException {
+        return whileWritten(() -> vendorIndex().search(vendor, journal));
     }
 
-    public void setAmount(BigDecimal amount) {
-        this.amount = amount;
+    // Returns null when there is no snapshot or the file or journal changed since it was written.
+    public synchronized List<Transaction> readSnapshot() throws IOException {
+        return whileWritten(() -> {
+            journal();
+            LedgerSnapshot snapshot = LedgerSnapshot.read(snapshotPath());
+            if (snapshot == null || !snapshot.matches(sourceSize(), sourceModified(), journal().size())) {
+                return null;
+            }
+            rowCount = snapshot.getRowCount();
+            resetTail(sourceSize());
+            return snapshot.getTransactions();
+        });
     }
 
-    public LocalDate getDate() {
-        return date;
+    public synchronized void writeSnapshot(List<Transaction> transactions) throws IOException {
+        whileWritten(() -> {
+            finishCompaction(false);
+            ensureRowCount();
+            if (writer != null) {
+                GroupCommitWriter.await(writer.flush());
+            }
+            LedgerSnapshot.write(snapshotPath(), transactions, rowCount, sourceSize(), sourceModified(), journal().size());
+            return null;
+        });
     }
 
-    public void setDate(LocalDate date) {
-        this.date = date;
+    public synchronized void close() throws IOException {
+        finishCompaction(true);
+        if (idsRestored) {
+            Transaction.getIdAllocator().save(idsPath());
+        }
+        if (writer != null) {
+            writer.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        if (partitions != null) {
+            partitions.save();
+        }
+        if (lockChannel != null) {
+            lockChannel.close();
+        }
     }
 
-    public LocalTime getTime() {
-        return time;
+    // Writes the current writer has made to the file, each carrying every row queued since the last.
+    synchronized long getWriteCount() {
+        return writer == null ? 0 : writer.getWriteCount();
     }
 
-    public void setTime(LocalTime time) {
-        this.time = time;
+    private GroupCommitWriter writer() throws IOException {
+        restoreIds();
+        if (writer == null) {
+            Path path = Paths.get(fileName);
+            writer = new GroupCommitWriter(path, fsyncPolicy, fsyncIntervalMillis);
+            writerKey = fileKey(path);
+        }
+        return writer;
     }
 
-    public String getDescription() {
-        return description;
+    private TransactionJournal journal() throws IOException {
+        restoreIds();
+        return whileLocked(() -> {
+            // Checked once a turn, since only another handler's turn can replace it.
+            if (journal != null && journalTurn != turn && !journalKey.equals(fileKey(journalPath()))) {
+                // Another handler compacted the file, which replaced the journal and renumbered the rows.
+                journal.close();
+                journal = null;
+            }
+            if (journal == null) {
+                TransactionFileCompactor.recover(Paths.get(fileName), journalPath());
+                journal = new TransactionJournal(journalPath().toString(), fsyncPolicy, fsyncIntervalMillis);
+                journalKey = fileKey(journalPath());
+            }
+            journalTurn = turn;
+            return journal;
+        });
     }
 
-    public void setDescription(String description) {
-        this.description = description;
+    // Brings the month partitions up to date with the file; they are rebuilt after a compaction. They
+    // copy every row into <file>.months, so date queries cost about as much disk again as the file.
+    private MonthPartitionedStore partitions() throws IOException {
+        finishCompaction(false);
+        journal();
+        if (partitions == null) {
+            partitions = new MonthPartitionedStore(Paths.get(fileName), Paths.get(fileName + ".months"), coldSegmentMonths);
+        }
+        partitions.catchUp(journal);
+        return partitions;
     }
 
+    // Brings the vendor index up to date with the file; it is rebuilt after a compaction.
+    private VendorIndex vendorIndex() throws IOException {
+        finishCompaction(false);
+        journal();
+        if (vendorIndex == null) {
+            vendorIndex = new VendorIndex(Paths.get(fileName), Paths.get(fileName + ".vendors"));
+        }
+        vendorIndex.catchUp(journal);
+        return vendorIndex;
+    }
 
-    public void setVendor(String vendor) {
-        this.vendor = vendor;
+    private Path journalPath() {
+        return Paths.get(fileName + ".journal");
     }
 
-    public String getType() {
-        return type;
+    private void afterJournalAppend() throws IOException {
+        ensureRowCount();
+        int deadRows = journal.getRecordCount();
+        if (compaction == null && deadRows >= COMPACTION_MIN_RECORDS && deadRows >= compactionThreshold * rowCount) {
+            if (writer != null) {
+                GroupCommitWriter.await(writer.flush());
+            }
+            journal.flush();
+            // Rows after the tail have not been numbered yet, so they are left to be copied as they are.
+            compaction = new TransactionFileCompactor(Paths.get(fileName), journalPath(),
+                    tailFileKey != null ? tailOffset : sourceSize(), rowCount,
+                    journal.size(), journal.copyOverrides(), journal.rowIds());
+            compaction.start();
+        }
+        finishCompaction(false);
     }
 
-    public void setType(String type) {
-        this.type = type;
+    // Swaps in a finished background compaction; with wait set, first waits for one still running.
+    private void finishCompaction(boolean wait) throws IOException {
+        if (compaction == null || (!wait && !compaction.isRewritten())) {
+            return;
+        }
+        TransactionFileCompactor finished = compaction;
+        compaction = null;
+        if (!finished.awaitRewrite()) {
+            return;
+        }
+        // Closing the writers waits for this handler's queued records to reach the files.
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        whileLocked(() -> {
+            int appendedRows = rowCount - finished.getRowCount();
+            // The tail is copied byte for byte, so anything not yet tailed sits at the same distance from the end.
+            long untailedBytes = sourceSize() - tailOffset;
+            if (finished.swap()) {
+                rowCount = finished.getLiveRows() + appendedRows;
+                if (tailFileKey != null) {
+                    tailFileKey = fileKey(Paths.get(fileName));
+                    tailOffset = sourceSize() - untailedBytes;
+                }
+            }
+            return null;
+        });
     }
 
-    @Override
-    public int compareTo(Transaction other) {
-        int dateComparison = date.compareTo(other.date);
-        if (dateComparison != 0) {
-            return dateComparison;
+    private void restoreIds() throws IOException {
+        if (!idsRestored) {
+            Transaction.getIdAllocator().restore(idsPath());
+            idsRestored = true;
         }
-        return time.compareTo(other.time);
     }
 
-    public static Transaction parse(String line) throws IllegalArgumentException {
-        String[] fields = line.split(",");
-        if (fields.length != 5) {
-            throw new IllegalArgumentException("Invalid transaction line: " + line);
+    private Path lockPath() {
+        return Paths.get(fileName + ".lock");
+    }
+
+    // Starts or joins this handler's turn at the file, first waiting for any other handler's turn to
+    // end. During a turn no one else appends to the file or journal, swaps in a compaction or
+    // recovers one. Returns whether a new turn was started.
+    private boolean lockAppends() throws IOException {
+        synchronized (appendLock) {
+            while (appendLock.holder != null && appendLock.holder != this) {
+                appendLock.waiting++;
+                try {
+                    waitForAppendLock();
+                } finally {
+                    appendLock.waiting--;
+                }
+            }
+            boolean started = appendLock.holder == null;
+            if (started) {
+                appendLock.fileLock = lockChannel().lock();
+                appendLock.holder = this;
+                appendLock.startedNanos = System.nanoTime();
+                turn++;
+            }
+            appendLock.uses++;
+            return started;
         }
-        BigDecimal amount = new BigDecimal(fields[0], Locale.US);
-        LocalDate date = LocalDate.parse(fields[1], DateTimeFormatter.ISO_DATE);
-        LocalTime time = LocalTime.parse(fields[2], DateTimeFormatter.ISO_TIME);
-        String description = fields[3];
-        String vendor = fields[4];
+    }
 
-        return new Transaction(amount, date, time, description, vendor);
+    // Starts a turn for an append, joining one kept going only by this handler's queued records; but
+    // not once another handler of this process waits, or after MAX_TURN_NANOS for the sake of other
+    // processes, so a busy handler does not keep the file to itself.
+    private boolean joinAppends() throws IOException {
+        synchronized (appendLock) {
+            while (appendLock.holder == this && appendLock.uses == appendLock.queued
+                    && (appendLock.waiting > 0 || System.nanoTime() - appendLock.startedNanos > MAX_TURN_NANOS)) {
+                waitForAppendLock();
+            }
+        }
+        return lockAppends();
     }
 
-    public String toCSV() {
-        DateTimeFormatter formatter = DateTimeFormatter.ISO_DATE;
-        return amount.toString() + "," + date.format(formatter) + "," + time.format(DateTimeFormatter.ISO_TIME) + "," + description + "," + vendor;
+    // Ends the turn once nothing uses it any more. Also called on writer threads as queued records
+    // are written, so it must not wait for anything.
+    private void unlockAppends() {
+        synchronized (appendLock) {
+            if (--appendLock.uses > 0) {
+                return;
+            }
+            try {
+                appendLock.fileLock.release();
+            } catch (IOException e) {
+                System.err.println("Error unlocking " + lockPath() + ": " + e.getMessage());
+            }
+            appendLock.fileLock = null;
+            appendLock.holder = null;
+            appendLock.notifyAll();
+        }
     }
 
-    public static boolean isValidTime(String timeString) {
-        try {
-            LocalTime.parse(timeString, DateTimeFormatter.ISO_TIME);
-            return true;
-        } catch (DateTimeParseException e) {
-            return false;
+    // Keeps the turn going until a record queued during it is written, so a compaction cannot swap
+    // the file or journal out from under it. Returns the action for the writer to run then.
+    private Runnable recordQueued() {
+        synchronized (appendLock) {
+            appendLock.uses++;
+            appendLock.queued++;
+        }
+        return this::recordWritten;
+    }
+
+    private void recordWritten() {
+        synchronized (appendLock) {
+            if (--appendLock.queued == 0) {
+                appendLock.notifyAll();
+            }
         }
+        unlockAppends();
     }
 
-    public static boolean isValidTransaction(String[] parts) {
-        if (parts.length != 5) {
-            return false;
+    private <T> T whileLocked(FileOperation<T> operation) throws IOException {
+        lockAppends();
+        try {
+            return operation.run();
+        } finally {
+            unlockAppends();
         }
-        if (!isValidAmount(parts[0])) {
-            return false;
+    }
+
+    // Also waits for the records this handler queued to be written first, for operations that read
+    // the file.
+    private <T> T whileWritten(FileOperation<T> operation) throws IOException {
+        lockAppends();
+        try {
+            synchronized (appendLock) {
+                while (appendLock.queued > 0) {
+                    waitForAppendLock();
+                }
+            }
+            return operation.run();
+        } finally {
+            unlockAppends();
         }
-        if (!isValidDate(parts[1])) {
-            return false;
+    }
+
+    // Called holding the AppendLock's monitor.
+    private void waitForAppendLock() throws IOException {
+        try {
+            appendLock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to append to " + fileName);
         }
-        if (!isValidTime(parts[2])) {
-            return false;
+    }
+
+    private FileChannel lockChannel() throws IOException {
+        if (lockChannel == null) {
+            lockChannel = FileChannel.open(lockPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
         }
-        return true;
+        return lockChannel;
     }
 
-    public static Transaction fromString(String transactionString) throws InvalidTransactionException {
-        String[] parts = transactionString.split(",");
-        if (!isValidTransaction(parts)) {
-            throw new InvalidTransactionException("Invalid transaction format: " + transactionString);
-        } else {
-            BigDecimal amount = new BigDecimal(parts[0], Locale.US);
-            LocalDate date = LocalDate.parse(parts[1], DateTimeFormatter.ISO_DATE);
-            LocalTime time = LocalTime.parse(parts[2], DateTimeFormatter.ISO_TIME);
-            String description = parts[3];
-            String vendor = parts[4];
-            return new Transaction(amount, date, time, description, vendor);
+    private Path idsPath() {
+        return Paths.get(fileName + ".ids");
+    }
+
+    private Path snapshotPath() {
+        return Paths.get(fileName + ".snapshot");
+    }
+
+    private long sourceSize() throws IOException {
+        Path path = Paths.get(fileName);
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    private long sourceModified() throws IOException {
+        Path path = Paths.get(fileName);
+        return Files.exists(path) ? Files.getLastModifiedTime(path).toMillis() : 0;
+    }
+
+    private void resetTail(long length) throws IOException {
+        Path path = Paths.get(fileName);
+        tailFileKey = Files.exists(path) ? fileKey(path) : null;
+        tailOffset = length;
+        unreadAppended.clear();
+        reloadNeeded = false;
+    }
+
+    // Identifies the file itself rather than its name, so a replaced file is noticed.
+    static String fileKey(Path path) throws IOException {
+        Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        return String.valueOf(key != null ? key : path.toAbsolutePath());
+    }
+
+    private void ensureRowCount() throws IOException {
+        if (rowCount < 0) {
+            rowCount = forEachRow(Paths.get(fileName), row -> {
+            });
         }
     }
 
-    public static class InvalidInputException extends Exception {
-        public InvalidInputException(String message) {
-            super(message);
+    // Rows of other files are numbered by position.
+    private static int idOf(TransactionJournal journal, int row) {
+        return journal != null ? journal.idOf(row) : row;
+    }
+
+    private TransactionJournal journalFor(Path path) throws IOException {
+        return path.equals(Paths.get(fileName)) ? journal() : null;
+    }
+
+    // Numbers rows in file order and applies the journal when reading this handler's own file.
+    private List<Transaction> resolveRows(TransactionJournal journal, List<Transaction> rows) {
+        List<Transaction> transactions = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Transaction transaction = rows.get(i);
+            transaction.setId(idOf(journal, i + 1));
+            if (journal != null) {
+                transaction = journal.resolve(transaction);
+            }
+            if (transaction != null) {
+                transactions.add(transaction);
+            }
+        }
+        if (journal != null) {
+            rowCount = rows.size();
         }
+        return transactions;
     }
 
-    public static class InvalidTransactionException extends Exception {
-        public InvalidTransactionException(String message) {
-            super(message);
+    // Visits every live row after applying the journal and returns the number of rows in the file.
+    private int forEachRow(Path path, Consumer<Transaction> action) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
         }
+        TransactionJournal journal = journalFor(path);
+        int row = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Transaction transaction = TransactionParser.parse(line, interner);
+                if (transaction == null) {
+                    System.err.println("Skipping invalid transaction line: " + line);
+                    continue;
+                }
+                transaction.setId(idOf(journal, ++row));
+                if (journal != null) {
+                    transaction = journal.resolve(transaction);
+                }
+                if (transaction != null) {
+                    action.accept(transaction);
+                }
+            }
+        }
+        return row;
     }
-}
 
+    private interface FileOperation<T> {
+        T run() throws IOException;
+    }
 
+    // The handlers of this process that hold a file's FileLock take turns through this.
+    private static final class AppendLock {
+        private CSVFileHandler holder;
+        private FileLock fileLock;
+        private long startedNanos;
+        // Operations of the holder in progress, and records it queued that are not written yet.
+        private int uses;
+        private int queued;
+        // Handlers of this process waiting for the turn to end.
+        private int waiting;
+    }
+}
@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+// A Ledger that any number of threads can write to and read from at once. Writers never lock:
+// each change takes the next sequence number from a counter and is stored in that slot of an
+// append-only log. Readers bring the inherited ledger state up to date by applying the log in
+// sequence order, through every change appended before the read began, then query it under a read
+// lock; so every query sees all changes up to some point in the sequence and none after it, and
+// changes keep being appended while readers run. Applying takes the write lock, but one thread at a
+// time does it for everyone waiting: a reader whose changes another thread already applied only takes
+// the read lock. Writers also apply the log now and then when nothing else holds either lock, so it
+// does not grow without bound when nothing reads.
+public class ConcurrentLedger extends Ledger {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Held by the one thread applying the log, so the others wait for it rather than queue for the
+    // write lock to apply the same changes again.
+    private final ReentrantLock applyLock = new ReentrantLock();
+    // Only changed under the write lock.
+    private volatile Chunk head = new Chunk(0);
+    private volatile long applied;
+    // Hint for writers, which would otherwise walk the chunks from head.
+    private volatile Chunk tail = head;
+
+    @Override
+    public void addTransaction(Transaction transaction) {
+        append(transaction);
+    }
+
+    @Override
+    public void removeTransaction(Transaction transaction) {
+        append(new Change(transaction, null));
+    }
+
+    // Removes and adds as one change, so no reader sees the ledger with neither transaction.
+    @Override
+    public void updateTransaction(Transaction oldTransaction, Transaction newTransaction) {
+        append(new Change(oldTransaction, newTransaction));
+    }
+
+    @Override
+    public void saveSnapshot(String fileName) throws IOException {
+        lockUpToDate();
+        try {
+            super.saveSnapshot(fileName);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Transaction getTransactionById(int id) {
+        return read(() -> super.getTransactionById(id));
+    }
+
+    // A copy, since the ledger's own list keeps changing as writes are applied.
+    @Override
+    public List<Transaction> getTransactions() {
+        return read(() -> Collections.unmodifiableList(new ArrayList<>(super.getTransactions())));
+    }
+
+    @Override
+    public List<Transaction> getDeposits() {
+        return read(super::getDeposits);
+    }
+
+    @Override
+    public List<Transaction> getPayments() {
+        return read(super::getPayments);
+    }
+
+    @Override
+    public List<Transaction> getTransactionsByDateRange(String startDate, String endDate) {
+        return read(() -> super.getTransactionsByDateRange(startDate, endDate));
+    }
+
+    @Override
+    public List<Transaction> getTransactionsByVendor(String vendor) {
+        return read(() -> super.getTransactionsByVendor(vendor));
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        return read(super::getBalance);
+    }
+
+    @Override
+    public BigDecimal getDepositTotal() {
+        return read(super::getDepositTotal);
+    }
+
+    @Override
+    public BigDecimal getPaymentTotal() {
+        return read(super::getPaymentTotal);
+    }
+
+    @Override
+    public int getTransactionCount() {
+        return read(super::getTransactionCount);
+    }
+
+    @Override
+    public BigDecimal balanceAsOf(LocalDate date) {
+        return read(() -> super.balanceAsOf(date));
+    }
+
+    @Override
+    public BigDecimal netChange(LocalDate startDate, LocalDate endDate) {
+        return read(() -> super.netChange(startDate, endDate));
+    }
+
+    @Override
+    public List<Transaction> getTransactionsByAmount(BigDecimal amount) {
+        return read(() -> super.getTransactionsByAmount(amount));
+    }
+
+    @Override
+    public List<Transaction> getTransactionsByAmountRange(BigDecimal minAmount, BigDecimal maxAmount) {
+        return read(() -> super.getTransactionsByAmountRange(minAmount, maxAmount));
+    }
+
+    @Override
+    public Transaction getHighestTransaction() {
+        return read(super::getHighestTransaction);
+    }
+
+    @Override
+    public Transaction getLowestTransaction() {
+        return read(super::getLowestTransaction);
+    }
+
+    @Override
+    public List<Transaction> getHighestTransactions(int count) {
+        return read(() -> super.getHighestTransactions(count));
+    }
+
+    @Override
+    public List<Transaction> getLowestTransactions(int count) {
+        return read(() -> super.getLowestTransactions(count));
+    }
+
+    // Number of changes appended but not yet applied.
+    public long getPendingChanges() {
+        return nextSequence.get() - applied;
+    }
+
+    private <T> T read(Supplier<T> query) {
+        lockUpToDate();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Takes the read lock once every change appended before the call has been applied.
+    private void lockUpToDate() {
+        long through = nextSequence.get();
+        if (applied >= through || lock.getReadHoldCount() > 0) {
+            lock.readLock().lock();
+            return;
+        }
+        applyLock.lock();
+        try {
+            if (applied < through) {
+                lock.writeLock().lock();
+                try {
+                    applyPending(through);
+                    lock.readLock().lock();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                return;
+            }
+        } finally {
+            applyLock.unlock();
+        }
+        // Applied by whoever held the apply lock before.
+        lock.readLock().lock();
+    }
+
+    private void append(Object change) {
+        long sequence = nextSequence.getAndIncrement();
+        Chunk chunk = chunkFor(sequence);
+        chunk.changes.set((int) (sequence - chunk.first), change);
+        if ((sequence & (CHUNK_SIZE - 1)) == CHUNK_SIZE - 1 && applyLock.tryLock()) {
+            try {
+                if (lock.writeLock().tryLock()) {
+                    try {
+                        applyPending(0);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+            } finally {
+                applyLock.unlock();
+            }
+        }
+    }
+
+    private Chunk chunkFor(long sequence) {
+        Chunk chunk = tail;
+        if (chunk.first > sequence) {
+            // Nothing at or after the sequence has been applied, so head is no later than its chunk.
+            chunk = head;
+        }
+        while (sequence >= chunk.first + CHUNK_SIZE) {
+            Chunk next = chunk.next.get();
+            if (next == null) {
+                next = new Chunk(chunk.first + CHUNK_SIZE);
+                if (!chunk.next.compareAndSet(null, next)) {
+                    next = chunk.next.get();
+                }
+            }
+            chunk = next;
+        }
+        if (chunk.first > tail.first) {
+            tail = chunk;
+        }
+        return chunk;
+    }
+
+    // Applies changes in sequence order up to the first slot a writer has not filled yet, first
+    // waiting for the writers of any slots before the given sequence. Called with the write lock held.
+    private void applyPending(long through) {
+        Chunk chunk = head;
+        long sequence = applied;
+        while (true) {
+            int index = (int) (sequence - chunk.first);
+            if (index == CHUNK_SIZE) {
+                Chunk next = chunk.next.get();
+                if (next == null) {
+                    if (sequence >= through) {
+                        break;
+                    }
+                    Thread.onSpinWait();
+                    continue;
+                }
+                chunk = next;
+                continue;
+            }
+            Object change = chunk.changes.get(index);
+            if (change == null) {
+                if (sequence >= through) {
+                    break;
+                }
+                // Taken but not yet stored; its writer is between the two steps of append().
+                Thread.onSpinWait();
+                continue;
+            }
+            apply(change);
+            sequence++;
+        }
+        head = chunk;
+        applied = sequence;
+    }
+
+    private void apply(Object change) {
+        if (change instanceof Transaction) {
+            super.addTransaction((Transaction) change);
+            return;
+        }
+        Change update = (Change) change;
+        super.removeTransaction(update.removed);
+        if (update.added != null) {
+            super.addTransaction(update.added);
+        }
+    }
+
+    private static final class Chunk {
+        final long first;
+        final AtomicReferenceArray<Object> changes = new AtomicReferenceArray<>(CHUNK_SIZE);
+        final AtomicReference<Chunk> next = new AtomicReference<>();
+
+        Chunk(long first) {
+            this.first = first;
+        }
+    }
+
+    // A removal, or a replacement when added is set. Additions are logged as the transaction itself.
+    private static final class Change {
+        final Transaction removed;
+        final Transaction added;
+
+        Change(Transaction removed, Transaction added) {
+            this.removed = removed;
+            this.added = added;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Prefix sums of amounts by day: a Fenwick tree of cents over a window of epoch days, which starts
+// small and is rebuilt twice as large or more whenever a date falls outside it. Amounts that are not
+// a whole number of cents, too large to sum safely in a long, or dated too far from the rest are kept
+// exactly in a per-day map instead. Sums have the largest scale of any amount added or removed, as
+// RunningTotals has, so the sum through the last day equals its balance.
+public class DailyBalanceIndex {
+    private static final int SCALE = 2;
+    private static final long MAX_CENTS = 1L << 52;
+    private static final int INITIAL_DAYS = 16;
+    // About 180 years, wider than any real ledger, and at most 1 MB of arrays: a single mistyped date
+    // further out is kept in the exact map rather than stretching the window towards it.
+    private static final int MAX_DAYS = 1 << 16;
+
+    private long firstDay;
+    private long[] dayTotals;
+    private long[] tree;
+    private final NavigableMap<Long, BigDecimal> exactTotals = new TreeMap<>();
+    private int scale;
+
+    public void add(LocalDate date, Money amount) {
+        add(date, amount, false);
+    }
+
+    public void remove(LocalDate date, Money amount) {
+        add(date, amount, true);
+    }
+
+    private void add(LocalDate date, Money amount, boolean negate) {
+        scale = Math.max(scale, amount.getScale());
+        long day = date.toEpochDay();
+        long cents = amount.isWholeAt(SCALE) ? amount.floorUnits(SCALE) : MAX_CENTS;
+        if (cents >= MAX_CENTS || cents <= -MAX_CENTS || !covers(day)) {
+            BigDecimal exact = amount.toBigDecimal();
+            exactTotals.merge(day, negate ? exact.negate() : exact, BigDecimal::add);
+            return;
+        }
+        long value = negate ? -cents : cents;
+        int index = (int) (day - firstDay);
+        dayTotals[index] += value;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += value;
+        }
+    }
+
+    // Sum of all amounts dated on or before the given day.
+    public BigDecimal sumThrough(LocalDate date) {
+        long day = date.toEpochDay();
+        long cents = 0;
+        if (tree != null && day >= firstDay) {
+            for (int i = (int) Math.min(day - firstDay + 1, tree.length - 1); i > 0; i -= i & -i) {
+                cents += tree[i];
+            }
+        }
+        // Below two places every amount in the tree had at most this scale, so the cents divide exactly.
+        BigDecimal total = BigDecimal.valueOf(cents, SCALE).setScale(scale, RoundingMode.UNNECESSARY);
+        for (BigDecimal amount : exactTotals.headMap(day, true).values()) {
+            total = total.add(amount);
+        }
+        return total;
+    }
+
+    // Days the prefix sums currently span.
+    int getWindowDays() {
+        return dayTotals == null ? 0 : dayTotals.length;
+    }
+
+    // Makes sure the window includes the day, growing it if needed; false if it would grow too wide.
+    private boolean covers(long day) {
+        if (tree == null) {
+            firstDay = day - INITIAL_DAYS / 2;
+            dayTotals = new long[INITIAL_DAYS];
+            tree = new long[INITIAL_DAYS + 1];
+            return true;
+        }
+        if (day >= firstDay && day - firstDay < dayTotals.length) {
+            return true;
+        }
+        long lastDay = firstDay + dayTotals.length - 1;
+        long span = Math.max(lastDay, day) - Math.min(firstDay, day) + 1;
+        if (span > MAX_DAYS) {
+            return false;
+        }
+        int length = dayTotals.length;
+        while (length < span) {
+            length *= 2;
+        }
+        // Grow towards the new day, so stepping further back or forward in time does not rebuild every time.
+        long newFirstDay = day < firstDay ? lastDay - length + 1 : firstDay;
+        long[] totals = new long[length];
+        System.arraycopy(dayTotals, 0, totals, (int) (firstDay - newFirstDay), dayTotals.length);
+        firstDay = newFirstDay;
+        dayTotals = totals;
+        tree = new long[length + 1];
+        System.arraycopy(totals, 0, tree, 1, length);
+        for (int i = 1; i <= length; i++) {
+            int parent = i + (i & -i);
+            if (parent <= length) {
+                tree[parent] += tree[i];
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,227 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Appends records to a file from a single background thread. Records queued while a write is in
+// progress go out together in the next write, and each caller's future completes once its record
+// is as durable as the fsync policy promises.
+public class GroupCommitWriter implements Closeable {
+    public enum FsyncPolicy {
+        EVERY_BATCH,
+        INTERVAL,
+        OS_MANAGED
+    }
+
+    private final FileChannel channel;
+    private final FsyncPolicy policy;
+    private final long intervalMillis;
+    private final Thread thread;
+    private final Object lock = new Object();
+    private List<Pending> pending = new ArrayList<>();
+    private final List<Pending> unsynced = new ArrayList<>();
+    private long lastSync = System.currentTimeMillis();
+    private boolean closed;
+    private volatile long writeCount;
+
+    public GroupCommitWriter(Path path, FsyncPolicy policy, long intervalMillis) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.policy = policy;
+        this.intervalMillis = intervalMillis;
+        this.thread = new Thread(this::run, "group-commit-" + path.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public CompletableFuture<Void> append(String record) {
+        return enqueue(record.getBytes(StandardCharsets.UTF_8), false, null);
+    }
+
+    // Also runs the action on the writer's thread as soon as the record has been written, before it is
+    // synced; or once its future has failed, if writing it failed or the writer is closed.
+    public CompletableFuture<Void> append(String record, Runnable written) {
+        return append(record.getBytes(StandardCharsets.UTF_8), written);
+    }
+
+    public CompletableFuture<Void> append(byte[] record, Runnable written) {
+        return enqueue(record, false, written);
+    }
+
+    // Completes once everything appended before it has been written and forced to disk.
+    public CompletableFuture<Void> flush() {
+        return enqueue(new byte[0], true, null);
+    }
+
+    // Number of writes made to the file, each carrying every record queued since the one before.
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    public static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(byte[] bytes, boolean sync, Runnable written) {
+        Pending record = new Pending(bytes, sync, written);
+        synchronized (lock) {
+            if (closed) {
+                record.future.completeExceptionally(new IOException("Writer is closed"));
+                written(List.of(record));
+                return record.future;
+            }
+            pending.add(record);
+            lock.notifyAll();
+        }
+        return record.future;
+    }
+
+    private void run() {
+        while (true) {
+            List<Pending> batch;
+            synchronized (lock) {
+                while (pending.isEmpty() && !closed && !syncDue()) {
+                    waitForWork();
+                }
+                if (pending.isEmpty() && closed) {
+                    break;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+            try {
+                write(batch);
+            } catch (IOException e) {
+                fail(batch, e);
+                fail(unsynced, e);
+                unsynced.clear();
+            }
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            fail(unsynced, e);
+        }
+    }
+
+    private void write(List<Pending> batch) throws IOException {
+        int size = 0;
+        boolean syncRequested = false;
+        for (Pending record : batch) {
+            size += record.bytes.length;
+            syncRequested |= record.sync;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Pending record : batch) {
+            buffer.put(record.bytes);
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            fail(batch, e);
+            written(batch);
+            throw e;
+        }
+        if (size > 0) {
+            writeCount++;
+        }
+        written(batch);
+        unsynced.addAll(batch);
+        if (syncRequested || policy == FsyncPolicy.EVERY_BATCH || syncDue()) {
+            sync();
+        } else if (policy == FsyncPolicy.OS_MANAGED) {
+            complete(unsynced);
+            unsynced.clear();
+        }
+    }
+
+    private void sync() throws IOException {
+        if (!unsynced.isEmpty()) {
+            channel.force(false);
+            complete(unsynced);
+            unsynced.clear();
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    private boolean syncDue() {
+        return policy == FsyncPolicy.INTERVAL && !unsynced.isEmpty()
+                && System.currentTimeMillis() - lastSync >= intervalMillis;
+    }
+
+    private void waitForWork() {
+        try {
+            if (policy == FsyncPolicy.INTERVAL && !unsynced.isEmpty()) {
+                lock.wait(Math.max(1, intervalMillis - (System.currentTimeMillis() - lastSync)));
+            } else {
+                lock.wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+        }
+    }
+
+    private static void written(List<Pending> records) {
+        for (Pending record : records) {
+            if (record.written != null) {
+                record.written.run();
+            }
+        }
+    }
+
+    private static void complete(List<Pending> records) {
+        for (Pending record : records) {
+            record.future.complete(null);
+        }
+    }
+
+    private static void fail(List<Pending> records, IOException e) {
+        for (Pending record : records) {
+            record.future.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private static class Pending {
+        private final byte[] bytes;
+        private final boolean sync;
+        private final Runnable written;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Pending(byte[] bytes, boolean sync, Runnable written) {
+            this.bytes = bytes;
+            this.sync = sync;
+            this.written = written;
+        }
+    }
+}
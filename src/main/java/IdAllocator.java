@@ -0,0 +1,36 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Hands out ids that are never handed out twice, and keeps clear of ids taken elsewhere, such as
+// ones loaded from a file, once told about them.
+public interface IdAllocator {
+    int next();
+
+    // Makes sure every id handed out from now on is above the given one.
+    void advancePast(int id);
+
+    // Every id handed out so far is below this.
+    int limit();
+
+    // Records the limit, so a later run can restore() it and carry on past every id this one used.
+    default void save(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temp, Integer.toString(limit()), StandardCharsets.UTF_8);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Does nothing if nothing was saved at the path.
+    default void restore(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            advancePast(Integer.parseInt(Files.readString(path, StandardCharsets.UTF_8).trim()) - 1);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid id allocator state in " + path, e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.Arrays;
+
+// Open-addressing hash map from int ids to int slots, without boxing either. Removal shifts later
+// entries of the probe run back, so lookups never have to step over tombstones.
+public class IdSlotMap {
+    public static final int MISSING = -1;
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private int[] slots;
+    private int size;
+
+    public IdSlotMap() {
+        this(16);
+    }
+
+    public IdSlotMap(int expected) {
+        allocate(Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int id) {
+        int mask = keys.length - 1;
+        for (int i = hash(id) & mask; slots[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == id) {
+                return slots[i];
+            }
+        }
+        return MISSING;
+    }
+
+    // Maps the id to the slot unless it is already mapped; returns the slot it ends up mapped to.
+    public int putIfAbsent(int id, int slot) {
+        int mask = keys.length - 1;
+        int i = hash(id) & mask;
+        for (; slots[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == id) {
+                return slots[i];
+            }
+        }
+        keys[i] = id;
+        slots[i] = slot;
+        if (++size * 4 > keys.length * 3) {
+            rehash(keys.length * 2);
+        }
+        return slot;
+    }
+
+    public void put(int id, int slot) {
+        int mask = keys.length - 1;
+        for (int i = hash(id) & mask; slots[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == id) {
+                slots[i] = slot;
+                return;
+            }
+        }
+        putIfAbsent(id, slot);
+    }
+
+    public int remove(int id) {
+        int mask = keys.length - 1;
+        int i = hash(id) & mask;
+        while (slots[i] != FREE && keys[i] != id) {
+            i = (i + 1) & mask;
+        }
+        if (slots[i] == FREE) {
+            return MISSING;
+        }
+        int removed = slots[i];
+        // Move back any later entry whose home position is not between the hole and itself.
+        for (int j = (i + 1) & mask; slots[j] != FREE; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                slots[i] = slots[j];
+                i = j;
+            }
+        }
+        slots[i] = FREE;
+        size--;
+        return removed;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, FREE);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldSlots = slots;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldSlots[i] != FREE) {
+                putIfAbsent(oldKeys[i], oldSlots[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        slots = new int[capacity];
+        Arrays.fill(slots, FREE);
+    }
+
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,386 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Imports a feed into a TransactionManager in stages joined by bounded queues: lines are read into
+// batches, parsed, written to the file and then added to the manager's list and totals. Each stage
+// runs on its own threads, so batches are parsed on every core while earlier ones are written. A
+// stage that falls behind fills its input queue, which blocks the stage before it, so a slow disk
+// slows the reader down rather than letting parsed rows pile up in memory.
+//
+// Batches are written before they are added to the manager, since writing assigns their ids, and are
+// only added once the write is as durable as the file handler's fsync policy promises. Rows reach the
+// file in feed order: the write stage has one thread, which holds back batches parsed ahead of an
+// earlier one until it arrives. Writing a batch only queues it to the file handler, so the next one is
+// queued while earlier ones are being written and synced, and they share writes; the index stage
+// waits for each to be durable. The manager must not be used by other threads while ingest() runs.
+public class IngestionPipeline {
+    public enum Stage {
+        READ,
+        PARSE,
+        WRITE,
+        INDEX
+    }
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_QUEUE_CAPACITY = 16;
+    // Put on a queue once per worker of the next stage when the feed ends.
+    private static final Batch<?> END = new Batch<>(-1, Collections.emptyList());
+
+    private final TransactionManager manager;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private final Map<Stage, Integer> parallelism = new EnumMap<>(Stage.class);
+    private final Map<Stage, StageMetrics> metrics = new EnumMap<>(Stage.class);
+    private final AtomicLong rejectedRows = new AtomicLong();
+    // The manager is not thread-safe, so index workers take turns.
+    private final ReentrantLock indexLock = new ReentrantLock();
+
+    public IngestionPipeline(TransactionManager manager) {
+        this.manager = manager;
+        for (Stage stage : Stage.values()) {
+            parallelism.put(stage, 1);
+            metrics.put(stage, new StageMetrics(stage));
+        }
+        parallelism.put(Stage.PARSE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public void setBatchSize(int rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + rows);
+        }
+        this.batchSize = rows;
+    }
+
+    // Batches each queue holds before the stage feeding it has to wait.
+    public void setQueueCapacity(int batches) {
+        if (batches < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + batches);
+        }
+        this.queueCapacity = batches;
+    }
+
+    // The read and write stages keep the feed in order, so they always have one thread.
+    public void setParallelism(Stage stage, int threads) {
+        if (threads < 1 || ((stage == Stage.READ || stage == Stage.WRITE) && threads != 1)) {
+            throw new IllegalArgumentException("Invalid number of threads for " + stage + ": " + threads);
+        }
+        parallelism.put(stage, threads);
+    }
+
+    public int getParallelism(Stage stage) {
+        return parallelism.get(stage);
+    }
+
+    // Safe to call from other threads while ingest() runs.
+    public StageMetrics getMetrics(Stage stage) {
+        return metrics.get(stage);
+    }
+
+    // Lines that were not valid transactions and were skipped.
+    public long getRejectedRows() {
+        return rejectedRows.get();
+    }
+
+    public long ingest(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return ingest(reader);
+        }
+    }
+
+    // Returns the number of transactions added. If a stage fails the others are stopped and its error
+    // is thrown, and batches already written may not have been added to the manager.
+    public long ingest(BufferedReader reader) throws IOException {
+        rejectedRows.set(0);
+        BlockingQueue<Batch<String>> lines = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Batch<Transaction>> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Batch<Transaction>> written = new ArrayBlockingQueue<>(queueCapacity);
+        metrics.get(Stage.READ).start(null);
+        metrics.get(Stage.PARSE).start(lines);
+        metrics.get(Stage.WRITE).start(parsed);
+        metrics.get(Stage.INDEX).start(written);
+        int threads = 0;
+        for (int count : parallelism.values()) {
+            threads += count;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        TransactionInterner interner = new TransactionInterner();
+        // The reader goes last: nothing fails before it starts, so a failure cannot shut the pool down
+        // while stages are still being submitted.
+        startWorkers(pool, failure, Stage.INDEX, written, null, batch -> {
+            GroupCommitWriter.await(batch.written);
+            indexLock.lock();
+            try {
+                manager.addWrittenBatch(batch.rows);
+            } finally {
+                indexLock.unlock();
+            }
+            return batch.rows;
+        });
+        startWriter(pool, failure, parsed, written);
+        startWorkers(pool, failure, Stage.PARSE, lines, parsed, batch -> parse(batch.rows, interner));
+        startReader(pool, failure, reader, lines);
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while ingesting transactions", e);
+        }
+        Throwable error = failure.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error != null) {
+            throw new IOException("Failed to ingest transactions", error);
+        }
+        return metrics.get(Stage.INDEX).getRows();
+    }
+
+    // Reads the lines into batches on one thread; time spent waiting for room on the queue is not
+    // counted as busy.
+    private void startReader(ExecutorService pool, AtomicReference<Throwable> failure, BufferedReader reader,
+                                 BlockingQueue<Batch<String>> output) {
+        StageMetrics stage = metrics.get(Stage.READ);
+        pool.execute(() -> {
+            try {
+                long sequence = 0;
+                List<String> batch = new ArrayList<>(batchSize);
+                long start = System.nanoTime();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    batch.add(line);
+                    if (batch.size() == batchSize) {
+                        stage.record(batch.size(), System.nanoTime() - start);
+                        output.put(new Batch<>(sequence++, batch));
+                        batch = new ArrayList<>(batchSize);
+                        start = System.nanoTime();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    stage.record(batch.size(), System.nanoTime() - start);
+                    output.put(new Batch<>(sequence, batch));
+                }
+                stage.finish();
+                endInput(output, Stage.PARSE);
+            } catch (InterruptedException e) {
+                // Stopped because another stage failed.
+            } catch (Throwable e) {
+                fail(pool, failure, e);
+            }
+        });
+    }
+
+    private List<Transaction> parse(List<String> lines, TransactionInterner interner) {
+        List<Transaction> transactions = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            if (line.isBlank()) {
+                continue;
+            }
+            Transaction transaction = TransactionParser.parse(line, interner);
+            if (transaction != null) {
+                transactions.add(transaction);
+            } else {
+                rejectedRows.incrementAndGet();
+            }
+        }
+        return transactions;
+    }
+
+    // Starts the stage's threads, which apply the work to each batch on the input queue and pass the
+    // result on in its place in the feed, even if empty, so the write stage does not wait for it. The
+    // last of them to see the end of the input passes the end on.
+    private <I, O> void startWorkers(ExecutorService pool, AtomicReference<Throwable> failure, Stage stage,
+                                     BlockingQueue<Batch<I>> input, BlockingQueue<Batch<O>> output, BatchWork<I, O> work) {
+        StageMetrics stageMetrics = metrics.get(stage);
+        int workers = parallelism.get(stage);
+        Stage next = output != null ? Stage.values()[stage.ordinal() + 1] : null;
+        AtomicInteger running = new AtomicInteger(workers);
+        for (int i = 0; i < workers; i++) {
+            pool.execute(() -> {
+                try {
+                    while (true) {
+                        Batch<I> batch = input.take();
+                        if (batch == END) {
+                            break;
+                        }
+                        long start = System.nanoTime();
+                        List<O> result = work.apply(batch);
+                        stageMetrics.record(batch.rows.size(), System.nanoTime() - start);
+                        if (output != null) {
+                            output.put(new Batch<>(batch.sequence, result));
+                        }
+                    }
+                    if (running.decrementAndGet() == 0) {
+                        stageMetrics.finish();
+                        if (output != null) {
+                            endInput(output, next);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Stopped because another stage failed.
+                } catch (Throwable e) {
+                    fail(pool, failure, e);
+                }
+            });
+        }
+    }
+
+    // Queues the parsed batches to the file in feed order on one thread. A batch parsed ahead of an
+    // earlier one waits here until that one arrives; the end comes after every batch, since it is only
+    // passed on once all parse workers are done.
+    private void startWriter(ExecutorService pool, AtomicReference<Throwable> failure, BlockingQueue<Batch<Transaction>> input,
+                             BlockingQueue<Batch<Transaction>> output) {
+        StageMetrics stage = metrics.get(Stage.WRITE);
+        pool.execute(() -> {
+            try {
+                Map<Long, Batch<Transaction>> early = new HashMap<>();
+                long next = 0;
+                while (true) {
+                    Batch<Transaction> batch = input.take();
+                    if (batch == END) {
+                        break;
+                    }
+                    early.put(batch.sequence, batch);
+                    for (Batch<Transaction> ready = early.remove(next); ready != null; ready = early.remove(++next)) {
+                        if (ready.rows.isEmpty()) {
+                            continue;
+                        }
+                        long start = System.nanoTime();
+                        ready.written = manager.writeBatch(ready.rows);
+                        stage.record(ready.rows.size(), System.nanoTime() - start);
+                        output.put(ready);
+                    }
+                }
+                stage.finish();
+                endInput(output, Stage.INDEX);
+            } catch (InterruptedException e) {
+                // Stopped because another stage failed.
+            } catch (Throwable e) {
+                fail(pool, failure, e);
+            }
+        });
+    }
+
+    // Tells each worker of the stage reading the queue that no more batches are coming.
+    @SuppressWarnings("unchecked")
+    private <T> void endInput(BlockingQueue<Batch<T>> queue, Stage stage) throws InterruptedException {
+        for (int i = 0; i < parallelism.get(stage); i++) {
+            queue.put((Batch<T>) END);
+        }
+    }
+
+    // The first failure in any stage stops every thread of the pipeline.
+    private static void fail(ExecutorService pool, AtomicReference<Throwable> failure, Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            pool.shutdownNow();
+        }
+    }
+
+    private interface BatchWork<I, O> {
+        List<O> apply(Batch<I> batch) throws IOException;
+    }
+
+    // Rows with the place of their batch in the feed, counted from 0.
+    private static final class Batch<T> {
+        private final long sequence;
+        private final List<T> rows;
+        // Set by the write stage; completes once the rows are durable.
+        private CompletableFuture<Void> written;
+
+        Batch(long sequence, List<T> rows) {
+            this.sequence = sequence;
+            this.rows = rows;
+        }
+    }
+
+    // Counters for one stage of the current or last ingest() call.
+    public static final class StageMetrics {
+        private final Stage stage;
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private volatile BlockingQueue<?> input;
+        private volatile long startNanos;
+        private volatile long endNanos;
+
+        StageMetrics(Stage stage) {
+            this.stage = stage;
+        }
+
+        void start(BlockingQueue<?> input) {
+            this.input = input;
+            rows.set(0);
+            batches.set(0);
+            busyNanos.set(0);
+            endNanos = 0;
+            startNanos = System.nanoTime();
+        }
+
+        void record(int batchRows, long nanos) {
+            rows.addAndGet(batchRows);
+            batches.incrementAndGet();
+            busyNanos.addAndGet(nanos);
+        }
+
+        void finish() {
+            endNanos = System.nanoTime();
+        }
+
+        public Stage getStage() {
+            return stage;
+        }
+
+        // Batches waiting for this stage; a stage whose queue stays full is the one holding the others up.
+        public int getQueueDepth() {
+            BlockingQueue<?> queue = input;
+            return queue != null ? queue.size() : 0;
+        }
+
+        public long getRows() {
+            return rows.get();
+        }
+
+        public long getBatches() {
+            return batches.get();
+        }
+
+        // Time the stage's threads spent on batches, added up across them.
+        public long getBusyNanos() {
+            return busyNanos.get();
+        }
+
+        // Rows handled per second since ingest() started, up to when the stage finished.
+        public double getRowsPerSecond() {
+            long end = endNanos != 0 ? endNanos : System.nanoTime();
+            long elapsed = end - startNanos;
+            return elapsed > 0 ? rows.get() * 1e9 / elapsed : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-6s %,12d rows %,8d batches %4d queued %,14.0f rows/s %,8d ms busy", stage, getRows(),
+                    getBatches(), getQueueDepth(), getRowsPerSecond(), TimeUnit.NANOSECONDS.toMillis(getBusyNanos()));
+        }
+    }
+}
@@ -3,32 +3,128 @@ import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
 import java.util.Scanner;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
 import java.util.stream.Collectors;
 
 public class Ledger {
-    private final List<Transaction> transactions;
+    private final TransactionSlots transactions;
+    // Transactions bucketed by date and second of day, for range queries without a full scan.
+    private final NavigableMap<Long, List<Transaction>> transactionsByDateTime;
+    private final VendorLookup transactionsByVendor;
+    private final AmountIndex transactionsByAmount;
+    private final RunningTotals totals;
+    private final DailyBalanceIndex balancesByDay;
+    private final TransactionInterner interner;
+    // Set when transactions live off the heap. The per-transaction indexes above are then left out,
+    // since they would hold every row on the heap, and queries scan the store instead.
+    private final OffHeapTransactionStore store;
 
     public Ledger() {
-        this.transactions = new ArrayList<>();
+        this.transactions = new TransactionSlots(new ArrayList<>());
+        this.transactionsByDateTime = new TreeMap<>();
+        this.transactionsByVendor = new VendorLookup();
+        this.transactionsByAmount = new AmountIndex();
+        this.totals = new RunningTotals();
+        this.balancesByDay = new DailyBalanceIndex();
+        this.interner = new TransactionInterner();
+        this.store = null;
+    }
+
+    // Keeps transactions in the given store, which must be empty.
+    public Ledger(OffHeapTransactionStore store) {
+        if (!store.isEmpty()) {
+            throw new IllegalArgumentException("Store already holds transactions");
+        }
+        this.transactions = new TransactionSlots(store);
+        this.transactionsByDateTime = null;
+        this.transactionsByVendor = null;
+        this.transactionsByAmount = null;
+        this.totals = new RunningTotals();
+        this.balancesByDay = new DailyBalanceIndex();
+        this.interner = null;
+        this.store = store;
     }
 
     public void addTransaction(Transaction transaction) {
         transactions.add(transaction);
+        totals.add(transaction.getMoney());
+        balancesByDay.add((LocalDate) transaction.getDate(), transaction.getMoney());
+        if (store != null) {
+            return;
+        }
+        interner.canonicalize(transaction);
+        transactionsByDateTime.computeIfAbsent(dateTimeKey(transaction), key -> new ArrayList<>(1)).add(transaction);
+        transactionsByVendor.add(transaction);
+        transactionsByAmount.add(transaction);
     }
 
+    // Removes the given transaction if it is stored, or else a stored copy of it: one with the same id
+    // and the same row. Stored transactions are found by identity, so one whose id was changed since
+    // it was added is still removed, and one with a stale or reused id never removes another row.
     public void removeTransaction(Transaction transaction) {
-        transactions.remove(transaction);
+        Transaction stored = transactions.contains(transaction) ? transaction : transactions.getById(transaction.getId());
+        if (stored != transaction && (stored == null || !stored.toCSV().equals(transaction.toCSV()))) {
+            return;
+        }
+        Transaction removed = transactions.delete(stored);
+        if (removed == null) {
+            return;
+        }
+        totals.remove(removed.getMoney());
+        balancesByDay.remove((LocalDate) removed.getDate(), removed.getMoney());
+        if (store != null) {
+            return;
+        }
+        long key = dateTimeKey(removed);
+        List<Transaction> bucket = transactionsByDateTime.get(key);
+        if (bucket != null && bucket.remove(removed) && bucket.isEmpty()) {
+            transactionsByDateTime.remove(key);
+        }
+        transactionsByVendor.remove(removed);
+        transactionsByAmount.remove(removed);
     }
 
     public void updateTransaction(Transaction oldTransaction, Transaction newTransaction) {
-        transactions.remove(oldTransaction);
-        transactions.add(newTransaction);
+        removeTransaction(oldTransaction);
+        addTransaction(newTransaction);
+    }
+
+    private static long dateTimeKey(Transaction transaction) {
+        return dateKey((LocalDate) transaction.getDate()) | transaction.getTime().toSecondOfDay();
+    }
+
+    private static long dateKey(LocalDate date) {
+        return date.toEpochDay() << 17;
+    }
+
+    public void saveSnapshot(String fileName) throws IOException {
+        LedgerSnapshot.write(Paths.get(fileName), transactions, transactions.size(), 0, 0, 0);
+    }
+
+    public static Ledger loadSnapshot(String fileName) throws IOException {
+        Ledger ledger = new Ledger();
+        LedgerSnapshot snapshot = LedgerSnapshot.read(Paths.get(fileName));
+        if (snapshot != null) {
+            for (Transaction transaction : snapshot.getTransactions()) {
+                ledger.addTransaction(transaction);
+            }
+        }
+        return ledger;
+    }
+
+    public Transaction getTransactionById(int id) {
+        return transactions.getById(id);
     }
 
     public List<Transaction> getTransactions() {
@@ -37,53 +133,75 @@ public class Ledger {
 
     public List<Transaction> getDeposits() {
         return transactions.stream()
-                .filter(transaction -> transaction.getAmount().compareTo(BigDecimal.ZERO) > 0)
+                .filter(transaction -> transaction.getMoney().signum() > 0)
                 .collect(Collectors.toList());
     }
 
     public List<Transaction> getPayments() {
         return transactions.stream()
-                .filter(transaction -> transaction.getAmount().compareTo(BigDecimal.ZERO) < 0)
+                .filter(transaction -> transaction.getMoney().signum() < 0)
                 .collect(Collectors.toList());
     }
 
     public List<Transaction> getTransactionsByDateRange(String startDate, String endDate) {
         LocalDate start = LocalDate.parse(startDate);
         LocalDate end = LocalDate.parse(endDate);
-        return transactions.stream()
-                .filter(transaction -> {
-                    LocalDate date = LocalDate.parse((CharSequence) transaction.getDate());
-                    return (date.isEqual(start) || date.isAfter(start)) &&
-                            (date.isEqual(end) || date.isBefore(end));
-                })
-                .collect(Collectors.toList());
+        List<Transaction> result = new ArrayList<>();
+        if (start.isAfter(end)) {
+            return result;
+        }
+        if (store != null) {
+            long first = start.toEpochDay();
+            long last = end.toEpochDay();
+            result = scan(row -> store.getEpochDay(row) >= first && store.getEpochDay(row) <= last);
+            result.sort(Comparator.comparingLong(Ledger::dateTimeKey));
+            return result;
+        }
+        for (List<Transaction> bucket : transactionsByDateTime.subMap(dateKey(start), dateKey(end.plusDays(1))).values()) {
+            result.addAll(bucket);
+        }
+        return result;
     }
 
     public List<Transaction> getTransactionsByVendor(String vendor) {
-        return transactions.stream()
-                .filter(transaction -> transaction.getVendor().equalsIgnoreCase(vendor))
-                .collect(Collectors.toList());
+        if (store != null) {
+            String key = VendorLookup.normalize(vendor);
+            return scan(row -> VendorLookup.normalize(store.getVendor(row)).equals(key));
+        }
+        return transactionsByVendor.get(vendor);
     }
 
     public List<Transaction> getTransactionsByAmountRange(double minAmount, double maxAmount) {
-        BigDecimal min = BigDecimal.valueOf(minAmount);
-        BigDecimal max = BigDecimal.valueOf(maxAmount);
-        return transactions.stream()
-                .filter(transaction -> transaction.getAmount().compareTo(min) >= 0 && transaction.getAmount().compareTo(max) <= 0)
-                .collect(Collectors.toList());
+        return getTransactionsByAmountRange(BigDecimal.valueOf(minAmount), BigDecimal.valueOf(maxAmount));
     }
 
     public BigDecimal getBalance() {
-        BigDecimal balance = BigDecimal.ZERO;
-        for (Transaction transaction : transactions) {
-            BigDecimal amount = new BigDecimal(String.valueOf(transaction.getAmount()));
-            if (transaction.getAmount().compareTo(BigDecimal.ZERO) > 0) {
-                balance = balance.add(amount);
-            } else {
-                balance = balance.subtract(amount);
-            }
+        return totals.getBalance();
+    }
+
+    public BigDecimal getDepositTotal() {
+        return totals.getDepositTotal();
+    }
+
+    public BigDecimal getPaymentTotal() {
+        return totals.getPaymentTotal();
+    }
+
+    public int getTransactionCount() {
+        return totals.getCount();
+    }
+
+    // Balance of all transactions dated on or before the given day.
+    public BigDecimal balanceAsOf(LocalDate date) {
+        return balancesByDay.sumThrough(date);
+    }
+
+    // Net change from all transactions dated between the two days, both included.
+    public BigDecimal netChange(LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            return BigDecimal.ZERO;
         }
-        return balance;
+        return balancesByDay.sumThrough(endDate).subtract(balancesByDay.sumThrough(startDate.minusDays(1)));
     }
 
     public List<Transaction> getMonthToDateTransactions() {
@@ -113,14 +231,90 @@ public class Ledger {
     }
 
     public List<Transaction> getTransactionsByAmount(BigDecimal amount) {
-        return transactions.stream()
-                .filter(transaction -> transaction.getAmount().equals(amount))
-                .collect(Collectors.toList());
+        Money money = Money.of(amount);
+        if (store != null) {
+            return scan(row -> store.compareAmount(row, money) == 0 && store.getMoney(row).equals(money));
+        }
+        return transactionsByAmount.get(money);
     }
 
     public List<Transaction> getTransactionsByAmountRange(BigDecimal minAmount, BigDecimal maxAmount) {
-        return transactions.stream()
-                .filter(transaction -> transaction.getAmount().compareTo(minAmount) >= 0 && transaction.getAmount().compareTo(maxAmount) <= 0)
-                .collect(Collectors.toList());
+        Money min = Money.of(minAmount);
+        Money max = Money.of(maxAmount);
+        if (store != null) {
+            List<Transaction> result = scan(row -> store.compareAmount(row, min) >= 0 && store.compareAmount(row, max) <= 0);
+            result.sort(Comparator.comparing(Transaction::getMoney));
+            return result;
+        }
+        return transactionsByAmount.range(min, max);
+    }
+
+    public Transaction getHighestTransaction() {
+        if (store != null) {
+            // Of equal amounts the index returns the last added, hence the reversed order of rows.
+            List<Transaction> highest = scanExtremes(1, -1, -1);
+            return highest.isEmpty() ? null : highest.get(0);
+        }
+        return transactionsByAmount.highest();
+    }
+
+    public Transaction getLowestTransaction() {
+        if (store != null) {
+            List<Transaction> lowest = scanExtremes(1, 1, 1);
+            return lowest.isEmpty() ? null : lowest.get(0);
+        }
+        return transactionsByAmount.lowest();
+    }
+
+    public List<Transaction> getHighestTransactions(int count) {
+        if (store != null) {
+            return scanExtremes(count, -1, 1);
+        }
+        return transactionsByAmount.highest(count);
+    }
+
+    public List<Transaction> getLowestTransactions(int count) {
+        if (store != null) {
+            return scanExtremes(count, 1, 1);
+        }
+        return transactionsByAmount.lowest(count);
+    }
+
+    private List<Transaction> scan(IntPredicate matches) {
+        List<Transaction> result = new ArrayList<>();
+        transactions.forEachLive(row -> {
+            if (matches.test(row)) {
+                result.add(store.get(row));
+            }
+        });
+        return result;
+    }
+
+    // Returns the count rows that come first when ordered by amount (sign 1 ascending, -1 descending)
+    // and then by row (rowOrder 1 ascending, -1 descending), keeping only count rows while scanning.
+    private List<Transaction> scanExtremes(int count, int sign, int rowOrder) {
+        List<Transaction> result = new ArrayList<>();
+        if (count <= 0) {
+            return result;
+        }
+        Comparator<Integer> order = (a, b) -> {
+            int byAmount = store.compareAmounts(a, b) * sign;
+            return byAmount != 0 ? byAmount : Integer.compare(a, b) * rowOrder;
+        };
+        PriorityQueue<Integer> kept = new PriorityQueue<>(order.reversed());
+        transactions.forEachLive(row -> {
+            if (kept.size() < count) {
+                kept.add(row);
+            } else if (order.compare(row, kept.peek()) < 0) {
+                kept.poll();
+                kept.add(row);
+            }
+        });
+        List<Integer> rows = new ArrayList<>(kept);
+        rows.sort(order);
+        for (int row : rows) {
+            result.add(store.get(row));
+        }
+        return result;
     }
 }
\ No newline at end of file
@@ -0,0 +1,609 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+public class LedgerBenchmark {
+    private static final String[] VENDORS = {"Starbucks", "Amazon", "Shell", "Walmart", "Target", "Netflix", "Uber", "Costco"};
+    private static final String[] DESCRIPTIONS = {"Coffee", "Groceries", "Fuel", "Subscription", "Ride", "Household"};
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: LedgerBenchmark generate <file> <rows> | load <file> | parse <file> | import <file> | snapshot <file> | append <file> | table <file> | intern <file> | offheap <directory> <rows> | money <file> | concurrent <rows> <threads> | ids <ids> <threads> | transfers <customers> <threads> | ingest <file>");
+            return;
+        }
+        Path path = Paths.get(args[1]);
+        switch (args[0]) {
+            case "generate" -> generate(path, Integer.parseInt(args[2]));
+            case "load" -> load(path);
+            case "parse" -> parse(path);
+            case "import" -> parallelImport(path);
+            case "snapshot" -> snapshot(path);
+            case "append" -> append(path);
+            case "table" -> table(path);
+            case "intern" -> intern(path);
+            case "offheap" -> offHeap(path, Integer.parseInt(args[2]));
+            case "money" -> money(path);
+            case "concurrent" -> concurrent(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            case "ids" -> ids(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            case "transfers" -> transfers(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            case "ingest" -> ingest(path);
+            default -> System.out.println("Unknown benchmark: " + args[0]);
+        }
+    }
+
+    private static void generate(Path path, int rows) throws IOException {
+        Random random = new Random(42);
+        LocalDate start = LocalDate.of(2015, 1, 1);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < rows; i++) {
+                long cents = random.nextInt(200000) - 100000;
+                LocalDate date = start.plusDays(random.nextInt(3650));
+                LocalTime time = LocalTime.ofSecondOfDay(random.nextInt(86400));
+                writer.write(String.format("%s%d.%02d,%s,%s,%s,%s", cents < 0 ? "-" : "", Math.abs(cents) / 100, Math.abs(cents) % 100, date, time,
+                        DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)], VENDORS[random.nextInt(VENDORS.length)]));
+                writer.newLine();
+            }
+        }
+        System.out.println("Wrote " + rows + " rows to " + path);
+    }
+
+    private static void load(Path path) throws IOException {
+        for (int run = 1; run <= RUNS; run++) {
+            long start = System.nanoTime();
+            int lineRows = readLines(path).size();
+            long lineNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int mappedRows = MappedTransactionReader.read(path).size();
+            long mappedNanos = System.nanoTime() - start;
+
+            report(run, "line reader", lineRows, lineNanos);
+            report(run, "mapped reader", mappedRows, mappedNanos);
+        }
+    }
+
+    private static void parallelImport(Path path) throws IOException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                ParallelTransactionImporter.read(path, pool);
+                long best = Long.MAX_VALUE;
+                int rows = 0;
+                for (int run = 0; run < RUNS; run++) {
+                    long start = System.nanoTime();
+                    rows = ParallelTransactionImporter.read(path, pool).size();
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                report(threads, "fork-join", rows, best);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static void snapshot(Path path) throws IOException {
+        Path snapshotPath = Paths.get(path + ".bench-snapshot");
+        List<Transaction> rows = MappedTransactionReader.read(path);
+        LedgerSnapshot.write(snapshotPath, rows, rows.size(), 0, 0, 0);
+        System.out.printf("csv %,d bytes, snapshot %,d bytes%n", Files.size(path), Files.size(snapshotPath));
+        rows = null;
+        for (int run = 1; run <= RUNS; run++) {
+            long start = System.nanoTime();
+            int csvRows = MappedTransactionReader.read(path).size();
+            long csvNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int snapshotRows = LedgerSnapshot.read(snapshotPath).getTransactions().size();
+            long snapshotNanos = System.nanoTime() - start;
+
+            report(run, "csv", csvRows, csvNanos);
+            report(run, "snapshot", snapshotRows, snapshotNanos);
+        }
+        Files.delete(snapshotPath);
+    }
+
+    private static void append(Path path) throws Exception {
+        int adds = 20_000;
+        for (GroupCommitWriter.FsyncPolicy policy : GroupCommitWriter.FsyncPolicy.values()) {
+            Files.deleteIfExists(path);
+            CSVFileHandler handler = new CSVFileHandler(path.toString(), policy, 5);
+            List<CompletableFuture<Void>> pending = new ArrayList<>(adds);
+            long start = System.nanoTime();
+            for (int i = 0; i < adds; i++) {
+                pending.add(handler.writeTransactionToFileAsync(new Transaction(BigDecimal.valueOf(i, 2),
+                        LocalDate.of(2023, 5, 4), LocalTime.of(9, 30), "Coffee", "Starbucks")));
+            }
+            CompletableFuture.allOf(pending.toArray(CompletableFuture<?>[]::new)).join();
+            report(1, policy.name().toLowerCase(), adds, System.nanoTime() - start);
+            handler.close();
+        }
+        Files.deleteIfExists(path);
+    }
+
+    // Imports the file into a new ledger file one addTransaction() call per row, then through an
+    // IngestionPipeline, printing each stage's counters after the pipeline runs.
+    private static void ingest(Path path) throws IOException {
+        Path target = Paths.get(path + ".bench-ingest");
+        for (int run = 1; run <= RUNS; run++) {
+            deleteLedgerFiles(target);
+            TransactionManager single = new TransactionManager(target.toString());
+            long start = System.nanoTime();
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                Transaction transaction = TransactionParser.parse(line);
+                if (transaction != null) {
+                    single.addTransaction(transaction);
+                }
+            }
+            long singleNanos = System.nanoTime() - start;
+            int singleRows = single.getAllTransactions().size();
+            BigDecimal singleTotal = single.getTotalAmount();
+            single.close();
+
+            deleteLedgerFiles(target);
+            TransactionManager piped = new TransactionManager(target.toString());
+            IngestionPipeline pipeline = new IngestionPipeline(piped);
+            start = System.nanoTime();
+            pipeline.ingest(path);
+            long pipelineNanos = System.nanoTime() - start;
+            if (piped.getAllTransactions().size() != singleRows || piped.getTotalAmount().compareTo(singleTotal) != 0) {
+                throw new IllegalStateException("Imports differ: " + piped.getTotalAmount() + " vs " + singleTotal);
+            }
+            piped.close();
+
+            report(run, "row at a time", singleRows, singleNanos);
+            report(run, "pipeline", singleRows, pipelineNanos);
+            for (IngestionPipeline.Stage stage : IngestionPipeline.Stage.values()) {
+                System.out.println("    " + pipeline.getMetrics(stage));
+            }
+        }
+        deleteLedgerFiles(target);
+    }
+
+    // Deletes the file and the journal, index and snapshot files kept next to it.
+    private static void deleteLedgerFiles(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, file.getFileName() + "*")) {
+            for (Path ledgerFile : files) {
+                Files.delete(ledgerFile);
+            }
+        }
+    }
+
+    private static void table(Path path) throws IOException {
+        long baseline = usedHeapAfterGc();
+        List<Transaction> objects = MappedTransactionReader.read(path);
+        long objectBytes = usedHeapAfterGc() - baseline;
+        TransactionTable table = new TransactionTable(objects);
+        objects = null;
+        long tableBytes = usedHeapAfterGc() - baseline;
+        System.out.printf("heap: objects %,d bytes, table %,d bytes%n", objectBytes, tableBytes);
+        objects = MappedTransactionReader.read(path);
+        for (int run = 1; run <= RUNS; run++) {
+            long start = System.nanoTime();
+            BigDecimal objectTotal = BigDecimal.ZERO;
+            for (Transaction transaction : objects) {
+                objectTotal = objectTotal.add(transaction.getAmount());
+            }
+            long objectNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            BigDecimal tableTotal = table.sum();
+            long tableNanos = System.nanoTime() - start;
+
+            if (objectTotal.compareTo(tableTotal) != 0) {
+                throw new IllegalStateException("Totals differ: " + objectTotal + " vs " + tableTotal);
+            }
+            report(run, "object sum", objects.size(), objectNanos);
+            report(run, "column sum", table.size(), tableNanos);
+        }
+    }
+
+    // Compares the heap held by rows as loaded, with repeated values shared, against the same rows
+    // with a separate string, date and time per row, as loading produced before.
+    private static void intern(Path path) throws IOException {
+        long baseline = usedHeapAfterGc();
+        List<Transaction> shared = MappedTransactionReader.read(path);
+        long sharedBytes = usedHeapAfterGc() - baseline;
+        List<Transaction> copies = new ArrayList<>(shared.size());
+        for (Transaction transaction : shared) {
+            copies.add(copyOf(transaction));
+        }
+        shared = null;
+        long copyBytes = usedHeapAfterGc() - baseline;
+        System.out.printf("heap for %,d rows: shared %,d bytes, per-row copies %,d bytes, saved %,d bytes%n",
+                copies.size(), sharedBytes, copyBytes, copyBytes - sharedBytes);
+        copies = null;
+        for (int run = 1; run <= RUNS; run++) {
+            long start = System.nanoTime();
+            int rows = MappedTransactionReader.read(path).size();
+            report(run, "canonical load", rows, System.nanoTime() - start);
+        }
+    }
+
+    // Sums the loaded amounts as BigDecimals, as the totals used to, and with MoneySum, reporting the
+    // time and the bytes each allocates.
+    private static void money(Path path) throws IOException {
+        List<Transaction> transactions = MappedTransactionReader.read(path);
+        List<BigDecimal> decimals = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            decimals.add(transaction.getMoney().toBigDecimal());
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+        for (int run = 1; run <= RUNS; run++) {
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            BigDecimal decimalTotal = BigDecimal.ZERO;
+            for (BigDecimal amount : decimals) {
+                decimalTotal = decimalTotal.add(amount);
+            }
+            long decimalNanos = System.nanoTime() - start;
+            long decimalBytes = threads.getThreadAllocatedBytes(thread) - allocated;
+
+            allocated = threads.getThreadAllocatedBytes(thread);
+            start = System.nanoTime();
+            MoneySum moneyTotal = new MoneySum();
+            for (Transaction transaction : transactions) {
+                moneyTotal.add(transaction.getMoney());
+            }
+            long moneyNanos = System.nanoTime() - start;
+            long moneyBytes = threads.getThreadAllocatedBytes(thread) - allocated;
+
+            if (!decimalTotal.equals(moneyTotal.toBigDecimal())) {
+                throw new IllegalStateException("Totals differ: " + decimalTotal + " vs " + moneyTotal.toBigDecimal());
+            }
+            report(run, "BigDecimal sum", decimals.size(), decimalNanos);
+            report(run, "Money sum", transactions.size(), moneyNanos);
+            System.out.printf("run %d: allocated BigDecimal %,d bytes, Money %,d bytes%n", run, decimalBytes, moneyBytes);
+        }
+    }
+
+    // Appends rows split across 1, 2, 4... up to the given number of writer threads, with one reader
+    // querying throughout, into a ConcurrentLedger and into a Ledger behind a single lock. Reports the
+    // time for the writers to finish, and for a read after them to see every row.
+    private static void concurrent(int rows, int maxThreads) throws Exception {
+        Random random = new Random(42);
+        LocalDate start = LocalDate.of(2015, 1, 1);
+        Transaction[] transactions = new Transaction[rows];
+        for (int i = 0; i < rows; i++) {
+            transactions[i] = new Transaction(Money.of(random.nextInt(200000) - 100000, 2), start.plusDays(random.nextInt(3650)),
+                    LocalTime.ofSecondOfDay(random.nextInt(86400)), DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)],
+                    VENDORS[random.nextInt(VENDORS.length)]);
+        }
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            for (int run = 1; run <= RUNS; run++) {
+                ConcurrentLedger concurrent = new ConcurrentLedger();
+                long[] concurrentNanos = writeConcurrently(transactions, threads, concurrent::addTransaction, concurrent::getBalance);
+                Ledger locked = new Ledger();
+                long[] lockedNanos = writeConcurrently(transactions, threads, transaction -> {
+                    synchronized (locked) {
+                        locked.addTransaction(transaction);
+                    }
+                }, () -> {
+                    synchronized (locked) {
+                        return locked.getBalance();
+                    }
+                });
+                if (concurrent.getTransactionCount() != rows || concurrent.getBalance().compareTo(locked.getBalance()) != 0) {
+                    throw new IllegalStateException("Ledgers differ: " + concurrent.getBalance() + " vs " + locked.getBalance());
+                }
+                report(run, threads + "w concurrent", rows, concurrentNanos[0]);
+                report(run, threads + "w + read", rows, concurrentNanos[1]);
+                report(run, threads + "w locked", rows, lockedNanos[0]);
+            }
+        }
+    }
+
+    private static long[] writeConcurrently(Transaction[] transactions, int threads, Consumer<Transaction> add,
+                                            Supplier<BigDecimal> balance) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Future<?> reader = pool.submit(() -> {
+            while (writing.get()) {
+                balance.get();
+            }
+        });
+        long start = System.nanoTime();
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = transactions.length * t / threads;
+            int end = transactions.length * (t + 1) / threads;
+            writers.add(pool.submit(() -> {
+                for (int i = first; i < end; i++) {
+                    add.accept(transactions[i]);
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        long writeNanos = System.nanoTime() - start;
+        writing.set(false);
+        reader.get();
+        balance.get();
+        long totalNanos = System.nanoTime() - start;
+        pool.shutdown();
+        return new long[] {writeNanos, totalNanos};
+    }
+
+    // Hands out ids from 1, 2, 4... up to the given number of threads, from striped blocks, from one
+    // shared atomic counter, and from a synchronized counter as Bank used, checking none repeat.
+    private static void ids(int count, int maxThreads) throws Exception {
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            for (int run = 1; run <= RUNS; run++) {
+                BlockIdAllocator blocks = new BlockIdAllocator();
+                AtomicInteger shared = new AtomicInteger();
+                Object lock = new Object();
+                int[] locked = new int[1];
+                report(run, threads + "t blocks", count, allocate(count, threads, blocks::next));
+                report(run, threads + "t atomic", count, allocate(count, threads, shared::incrementAndGet));
+                report(run, threads + "t synchronized", count, allocate(count, threads, () -> {
+                    synchronized (lock) {
+                        return ++locked[0];
+                    }
+                }));
+            }
+        }
+    }
+
+    private static long allocate(int count, int threads, IntSupplier next) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        int[][] ids = new int[threads][];
+        long start = System.nanoTime();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(pool.submit(() -> {
+                int[] mine = new int[count / threads];
+                for (int i = 0; i < mine.length; i++) {
+                    mine[i] = next.getAsInt();
+                }
+                ids[thread] = mine;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        long nanos = System.nanoTime() - start;
+        pool.shutdown();
+        BitSet seen = new BitSet();
+        for (int[] mine : ids) {
+            for (int id : mine) {
+                if (seen.get(id)) {
+                    throw new IllegalStateException("Id " + id + " handed out twice");
+                }
+                seen.set(id);
+            }
+        }
+        return nanos;
+    }
+
+    // Moves money between random pairs of customers from 1, 2, 4... up to the given number of threads,
+    // one transfer at a time, in batches, and one at a time under a single bank-wide lock, checking
+    // afterwards that no posting was lost and the balances still sum to zero.
+    private static void transfers(int customers, int maxThreads) throws Exception {
+        int count = 200000;
+        int batchSize = 1000;
+        Random random = new Random(42);
+        List<Transfer> transfers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int from = random.nextInt(customers);
+            int to = (from + 1 + random.nextInt(customers - 1)) % customers;
+            transfers.add(new Transfer(from, to, BigDecimal.valueOf(1 + random.nextInt(100000), 2), "Transfer"));
+        }
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            for (int run = 1; run <= RUNS; run++) {
+                Bank single = bankOf(customers);
+                report(run, threads + "t single", count, transferConcurrently(transfers, threads, 1, batch -> {
+                    Transfer transfer = batch.get(0);
+                    single.transfer(transfer.getFromCustomerId(), transfer.getToCustomerId(), transfer.getAmount(),
+                            transfer.getDescription());
+                }));
+                checkTransfers(single, count);
+                Bank batched = bankOf(customers);
+                report(run, threads + "t batched", count, transferConcurrently(transfers, threads, batchSize, batched::transferAll));
+                checkTransfers(batched, count);
+                Bank locked = bankOf(customers);
+                report(run, threads + "t locked", count, transferConcurrently(transfers, threads, 1, batch -> {
+                    Transfer transfer = batch.get(0);
+                    synchronized (locked) {
+                        locked.transfer(transfer.getFromCustomerId(), transfer.getToCustomerId(), transfer.getAmount(),
+                                transfer.getDescription());
+                    }
+                }));
+                checkTransfers(locked, count);
+            }
+        }
+    }
+
+    private static Bank bankOf(int customers) {
+        Bank bank = new Bank("Benchmark Bank", "1 Main St", "555-0100");
+        for (int i = 0; i < customers; i++) {
+            bank.addCustomer(new Customer(i, "Customer " + i, "", "", new Account()));
+        }
+        return bank;
+    }
+
+    private static long transferConcurrently(List<Transfer> transfers, int threads, int batchSize,
+                                             Consumer<List<Transfer>> post) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = transfers.size() * t / threads;
+            int end = transfers.size() * (t + 1) / threads;
+            workers.add(pool.submit(() -> {
+                for (int i = first; i < end; i += batchSize) {
+                    post.accept(transfers.subList(i, Math.min(i + batchSize, end)));
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        long nanos = System.nanoTime() - start;
+        pool.shutdown();
+        return nanos;
+    }
+
+    private static void checkTransfers(Bank bank, int count) {
+        BigDecimal total = BigDecimal.ZERO;
+        int postings = 0;
+        for (Customer customer : bank.getCustomers()) {
+            total = total.add(customer.getAccount().getBalance());
+            postings += customer.getAccount().getTransactionCount();
+        }
+        if (total.signum() != 0 || postings != 2 * count) {
+            throw new IllegalStateException("Transfers lost: total " + total + ", " + postings + " postings");
+        }
+    }
+
+    private static Transaction copyOf(Transaction transaction) {
+        LocalDate date = (LocalDate) transaction.getDate();
+        LocalTime time = transaction.getTime();
+        return new Transaction(transaction.getMoney(), LocalDate.of(date.getYear(), date.getMonthValue(), date.getDayOfMonth()),
+                LocalTime.of(time.getHour(), time.getMinute(), time.getSecond(), time.getNano()),
+                new String(transaction.getDescription()), new String(transaction.getVendor()));
+    }
+
+    // Fills an off-heap ledger backed by files in the directory, showing heap use and GC time stay flat
+    // as rows are added, then times full scans of the store.
+    private static void offHeap(Path directory, int rows) throws IOException {
+        Random random = new Random(42);
+        LocalDate start = LocalDate.of(2015, 1, 1);
+        try (OffHeapTransactionStore store = new OffHeapTransactionStore(directory)) {
+            Ledger ledger = new Ledger(store);
+            long begin = System.nanoTime();
+            for (int i = 1; i <= rows; i++) {
+                Transaction transaction = new Transaction(BigDecimal.valueOf(random.nextInt(200000) - 100000, 2),
+                        start.plusDays(random.nextInt(3650)), LocalTime.ofSecondOfDay(random.nextInt(86400)),
+                        DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)], VENDORS[random.nextInt(VENDORS.length)]);
+                transaction.setId(i);
+                ledger.addTransaction(transaction);
+                if (i % Math.max(rows / 10, 1) == 0) {
+                    System.out.printf("%,12d rows: heap %,d bytes after GC, %,d ms in GC so far%n", i, usedHeapAfterGc(), gcMillis());
+                }
+            }
+            report(1, "off-heap append", rows, System.nanoTime() - begin);
+            for (int run = 1; run <= RUNS; run++) {
+                long scanStart = System.nanoTime();
+                int found = ledger.getTransactionsByDateRange("2020-03-01", "2020-03-07").size();
+                report(run, "week scan", rows, System.nanoTime() - scanStart);
+                scanStart = System.nanoTime();
+                Transaction highest = ledger.getHighestTransaction();
+                report(run, "highest scan", rows, System.nanoTime() - scanStart);
+                if (found == 0 || highest == null) {
+                    throw new IllegalStateException("Scan found nothing");
+                }
+            }
+            System.out.println("balance as of 2020-03-07: " + ledger.balanceAsOf(LocalDate.of(2020, 3, 7)));
+        }
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(collector.getCollectionTime(), 0);
+        }
+        return total;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void parse(Path path) throws Exception {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        for (int run = 1; run <= RUNS; run++) {
+            long start = System.nanoTime();
+            for (String line : lines) {
+                legacyFromString(line);
+            }
+            long legacyNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (String line : lines) {
+                Transaction.fromString(line);
+            }
+            long parserNanos = System.nanoTime() - start;
+
+            report(run, "split + validate", lines.size(), legacyNanos);
+            report(run, "single pass", lines.size(), parserNanos);
+        }
+    }
+
+    // The split-and-validate-twice path fromString used before TransactionParser.
+    private static Transaction legacyFromString(String line) throws Transaction.InvalidTransactionException {
+        String[] parts = line.split(",");
+        if (!legacyIsValid(parts)) {
+            throw new Transaction.InvalidTransactionException("Invalid transaction format: " + line);
+        }
+        BigDecimal amount = new BigDecimal(parts[0]);
+        LocalDate date = LocalDate.parse(parts[1], DateTimeFormatter.ISO_DATE);
+        LocalTime time = LocalTime.parse(parts[2], DateTimeFormatter.ISO_TIME);
+        return new Transaction(amount, date, time, parts[3], parts[4]);
+    }
+
+    // Checks each field by parsing it and catching the failure, as Transaction.isValidTransaction did.
+    private static boolean legacyIsValid(String[] parts) {
+        if (parts.length != 5) {
+            return false;
+        }
+        try {
+            new BigDecimal(parts[0]);
+            LocalDate.parse(parts[1], DateTimeFormatter.ISO_DATE);
+            LocalTime.parse(parts[2], DateTimeFormatter.ISO_TIME);
+            return true;
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static List<Transaction> readLines(Path path) throws IOException {
+        List<Transaction> transactions = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                transactions.add(Transaction.parse(line));
+            }
+        }
+        return transactions;
+    }
+
+    private static void report(int run, String name, int rows, long nanos) {
+        System.out.printf("run %d %-16s %,12d rows %,10d ms %,14.0f rows/s%n", run, name, rows, nanos / 1_000_000,
+                rows / (nanos / 1e9));
+    }
+}
@@ -0,0 +1,323 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary columnar image of a transaction list: one column per field, strings dictionary-encoded.
+// The stamp records the size and modification time of the files it was taken from so a stale
+// snapshot can be detected and skipped.
+public class LedgerSnapshot {
+    private static final int MAGIC = 0x4C534E50;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final long sourceSize;
+    private final long sourceModified;
+    private final long journalSize;
+    private final int rowCount;
+    private final List<Transaction> transactions;
+
+    private LedgerSnapshot(long sourceSize, long sourceModified, long journalSize, int rowCount, List<Transaction> transactions) {
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+        this.journalSize = journalSize;
+        this.rowCount = rowCount;
+        this.transactions = transactions;
+    }
+
+    public boolean matches(long sourceSize, long sourceModified, long journalSize) {
+        return this.sourceSize == sourceSize && this.sourceModified == sourceModified && this.journalSize == journalSize;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public static void write(Path path, List<Transaction> transactions, int rowCount,
+                             long sourceSize, long sourceModified, long journalSize) throws IOException {
+        int size = transactions.size();
+        int[] ids = new int[size];
+        long[] amounts = new long[size];
+        byte[] scales = new byte[size];
+        int[] days = new int[size];
+        int[] seconds = new int[size];
+        int[] nanos = new int[size];
+        int[] descriptions = new int[size];
+        int[] vendors = new int[size];
+        int[] types = new int[size];
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Transaction transaction = transactions.get(i);
+            Money money = transaction.getMoney();
+            if (money.isCompact()) {
+                amounts[i] = money.getUnits();
+                scales[i] = (byte) money.getScale();
+            } else {
+                BigDecimal amount = money.toBigDecimal();
+                if (amount.unscaledValue().bitLength() > 63 || amount.scale() < Byte.MIN_VALUE || amount.scale() > Byte.MAX_VALUE) {
+                    throw new IOException("Amount " + amount + " does not fit the snapshot format");
+                }
+                amounts[i] = amount.unscaledValue().longValue();
+                scales[i] = (byte) amount.scale();
+            }
+            LocalTime time = transaction.getTime();
+            ids[i] = transaction.getId();
+            days[i] = (int) ((LocalDate) transaction.getDate()).toEpochDay();
+            seconds[i] = time.toSecondOfDay();
+            nanos[i] = time.getNano();
+            descriptions[i] = encode(transaction.getDescription(), dictionary, strings);
+            vendors[i] = encode(transaction.getVendor(), dictionary, strings);
+            types[i] = encode(transaction.getType(), dictionary, strings);
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (ColumnOutput out = new ColumnOutput(FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(sourceSize);
+            out.putLong(sourceModified);
+            out.putLong(journalSize);
+            out.putInt(rowCount);
+            out.putInt(size);
+            out.putInt(strings.size());
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.putInt(bytes.length);
+                out.putBytes(bytes);
+            }
+            out.putInts(ids);
+            out.putLongs(amounts);
+            out.putBytes(scales);
+            out.putInts(days);
+            out.putInts(seconds);
+            out.putInts(nanos);
+            out.putInts(descriptions);
+            out.putInts(vendors);
+            out.putInts(types);
+            out.force();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Returns null when there is no snapshot or it was written by an incompatible version.
+    public static LedgerSnapshot read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (ColumnInput in = new ColumnInput(FileChannel.open(path, StandardOpenOption.READ))) {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return null;
+            }
+            long sourceSize = in.getLong();
+            long sourceModified = in.getLong();
+            long journalSize = in.getLong();
+            int rowCount = in.getInt();
+            int size = in.getInt();
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[in.getInt()];
+                in.getBytes(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int[] ids = in.getInts(size);
+            long[] amounts = in.getLongs(size);
+            byte[] scales = new byte[size];
+            in.getBytes(scales);
+            int[] days = in.getInts(size);
+            int[] seconds = in.getInts(size);
+            int[] nanos = in.getInts(size);
+            int[] descriptions = in.getInts(size);
+            int[] vendors = in.getInts(size);
+            int[] types = in.getInts(size);
+
+            List<Transaction> transactions = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Transaction transaction = Transaction.restore(ids[i], Money.of(amounts[i], scales[i]),
+                        TemporalCache.ofEpochDay(days[i]), TemporalCache.ofNanoOfDay(seconds[i] * 1_000_000_000L + nanos[i]),
+                        strings[descriptions[i]], strings[vendors[i]]);
+                transaction.setType(strings[types[i]]);
+                transactions.add(transaction);
+            }
+            return new LedgerSnapshot(sourceSize, sourceModified, journalSize, rowCount, transactions);
+        }
+    }
+
+    private static int encode(String value, Map<String, Integer> dictionary, List<String> strings) {
+        String key = value == null ? "" : value;
+        Integer id = dictionary.get(key);
+        if (id == null) {
+            id = strings.size();
+            dictionary.put(key, id);
+            strings.add(key);
+        }
+        return id;
+    }
+
+    private static class ColumnOutput implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        ColumnOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putBytes(byte[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                ensure(1);
+                int count = Math.min(buffer.remaining(), values.length - offset);
+                buffer.put(values, offset, count);
+                offset += count;
+            }
+        }
+
+        void putInts(int[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                ensure(Integer.BYTES);
+                int count = Math.min(buffer.remaining() / Integer.BYTES, values.length - offset);
+                buffer.asIntBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                offset += count;
+            }
+        }
+
+        void putLongs(long[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                ensure(Long.BYTES);
+                int count = Math.min(buffer.remaining() / Long.BYTES, values.length - offset);
+                buffer.asLongBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * Long.BYTES);
+                offset += count;
+            }
+        }
+
+        void force() throws IOException {
+            flush();
+            channel.force(true);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    private static class ColumnInput implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        ColumnInput(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        int getInt() throws IOException {
+            require(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            require(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        void getBytes(byte[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                require(1);
+                int count = Math.min(buffer.remaining(), values.length - offset);
+                buffer.get(values, offset, count);
+                offset += count;
+            }
+        }
+
+        int[] getInts(int size) throws IOException {
+            int[] values = new int[size];
+            int offset = 0;
+            while (offset < size) {
+                require(Integer.BYTES);
+                int count = Math.min(buffer.remaining() / Integer.BYTES, size - offset);
+                buffer.asIntBuffer().get(values, offset, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                offset += count;
+            }
+            return values;
+        }
+
+        long[] getLongs(int size) throws IOException {
+            long[] values = new long[size];
+            int offset = 0;
+            while (offset < size) {
+                require(Long.BYTES);
+                int count = Math.min(buffer.remaining() / Long.BYTES, size - offset);
+                buffer.asLongBuffer().get(values, offset, count);
+                buffer.position(buffer.position() + count * Long.BYTES);
+                offset += count;
+            }
+            return values;
+        }
+
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Truncated snapshot");
+                }
+            }
+            buffer.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
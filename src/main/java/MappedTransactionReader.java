@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+// Loads transaction rows by memory-mapping the file and decoding fields straight from the mapped bytes.
+public class MappedTransactionReader {
+    private static final long MAX_REGION = Integer.MAX_VALUE;
+    private static final int FIELD_COUNT = 5;
+    private static final int RECENT_STRINGS = 256;
+
+    private final int[] fieldStart = new int[FIELD_COUNT];
+    private final int[] fieldEnd = new int[FIELD_COUNT];
+    private byte[] scratch = new byte[256];
+    // The region being read, as text for TransactionParser's field parsers.
+    private final ByteText text = new ByteText();
+    private final TransactionInterner interner;
+    private final RecentStrings recentDescriptions = new RecentStrings();
+    private final RecentStrings recentVendors = new RecentStrings();
+
+    public MappedTransactionReader() {
+        this(new TransactionInterner());
+    }
+
+    public MappedTransactionReader(TransactionInterner interner) {
+        this.interner = interner;
+    }
+
+    public static List<Transaction> read(Path path) throws IOException {
+        return read(path, Files.exists(path) ? Files.size(path) : 0);
+    }
+
+    public static List<Transaction> read(Path path, long length) throws IOException {
+        return read(path, length, new TransactionInterner());
+    }
+
+    // Reads only the first length bytes, so rows appended while reading are left for a later read.
+    public static List<Transaction> read(Path path, long length, TransactionInterner interner) throws IOException {
+        if (!Files.exists(path)) {
+            return new ArrayList<>();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedTransactionReader(interner).read(channel, 0, Math.min(length, channel.size()));
+        }
+    }
+
+    // Reads the rows in [start, end); both offsets must fall on line starts (or the end of the file).
+    public List<Transaction> read(FileChannel channel, long start, long end) throws IOException {
+        List<Transaction> transactions = new ArrayList<>();
+        read(channel, start, end, transactions::add);
+        return transactions;
+    }
+
+    public void read(FileChannel channel, long start, long end, Consumer<Transaction> action) throws IOException {
+        long position = start;
+        while (position < end) {
+            long length = Math.min(MAX_REGION, end - position);
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            boolean last = position + length == end;
+            int consumed = readRegion(region, (int) length, last, action);
+            if (consumed == 0) {
+                throw new IOException("Line longer than " + MAX_REGION + " bytes at offset " + position);
+            }
+            position += consumed;
+        }
+    }
+
+    // Returns the offset just past the last newline in [start, end), or start if there is none.
+    static long lastLineEnd(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = end;
+        while (position > start) {
+            int length = (int) Math.min(buffer.capacity(), position - start);
+            buffer.clear().limit(length);
+            long from = position - length;
+            while (buffer.hasRemaining() && channel.read(buffer, from + buffer.position()) > 0) {
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return from + i + 1;
+                }
+            }
+            position = from;
+        }
+        return start;
+    }
+
+    private int readRegion(MappedByteBuffer region, int length, boolean last, Consumer<Transaction> action) {
+        text.bytes = region;
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (region.get(i) == '\n') {
+                readLine(region, lineStart, i, action);
+                lineStart = i + 1;
+            }
+        }
+        if (last && lineStart < length) {
+            readLine(region, lineStart, length, action);
+            lineStart = length;
+        }
+        return lineStart;
+    }
+
+    private void readLine(MappedByteBuffer buffer, int start, int end, Consumer<Transaction> action) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (isBlank(buffer, start, end)) {
+            return;
+        }
+        Transaction transaction = null;
+        if (splitFields(buffer, start, end)) {
+            Money amount = TransactionParser.parseAmount(text, fieldStart[0], fieldEnd[0]);
+            LocalDate date = TransactionParser.parseDate(text, fieldStart[1], fieldEnd[1]);
+            LocalTime time = TransactionParser.parseTime(text, fieldStart[2], fieldEnd[2]);
+            if (amount != null && date != null && time != null) {
+                transaction = new Transaction(amount, date, time,
+                        text(buffer, fieldStart[3], fieldEnd[3], recentDescriptions, interner::description),
+                        text(buffer, fieldStart[4], fieldEnd[4], recentVendors, interner::vendor));
+            }
+        }
+        if (transaction == null) {
+            System.err.println("Skipping invalid transaction line: " + decode(buffer, start, end));
+            return;
+        }
+        action.accept(transaction);
+    }
+
+    private boolean splitFields(MappedByteBuffer buffer, int start, int end) {
+        int field = 0;
+        fieldStart[0] = start;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == ',') {
+                if (field == FIELD_COUNT - 1) {
+                    return false;
+                }
+                fieldEnd[field] = i;
+                fieldStart[++field] = i + 1;
+            }
+        }
+        fieldEnd[field] = end;
+        return field == FIELD_COUNT - 1;
+    }
+
+    private static boolean isBlank(MappedByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b != ' ' && b != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Decodes a text field, reusing the string from the last row with the same bytes in this slot.
+    private String text(MappedByteBuffer buffer, int start, int end, RecentStrings recent, UnaryOperator<String> canonical) {
+        int length = end - start;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, length);
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + scratch[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (RECENT_STRINGS - 1);
+        byte[] bytes = recent.bytes[slot];
+        if (bytes != null && Arrays.equals(bytes, 0, bytes.length, scratch, 0, length)) {
+            return recent.strings[slot];
+        }
+        String value = canonical.apply(new String(scratch, 0, length, StandardCharsets.UTF_8));
+        recent.bytes[slot] = Arrays.copyOf(scratch, length);
+        recent.strings[slot] = value;
+        return value;
+    }
+
+    private String decode(MappedByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Mapped bytes read as Latin-1 characters. The fields it is parsed for are ASCII, and any other byte
+    // becomes a character none of the parsers accept, just as it would fail a byte comparison.
+    private static final class ByteText implements CharSequence {
+        private ByteBuffer bytes;
+
+        @Override
+        public int length() {
+            return bytes.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            byte[] copy = new byte[end - start];
+            bytes.get(start, copy, 0, copy.length);
+            return new String(copy, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+
+    // Strings recently decoded for one field, keyed by their bytes, so a repeated value is neither
+    // decoded again nor looked up in the interner.
+    private static final class RecentStrings {
+        private final byte[][] bytes = new byte[RECENT_STRINGS][];
+        private final String[] strings = new String[RECENT_STRINGS];
+    }
+}
@@ -0,0 +1,235 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// An exact decimal amount held as a long of minor units and a scale (units 1250 at scale 2 is 12.50),
+// so arithmetic and comparison on ordinary amounts need no BigDecimal. Values that do not fit, and
+// results that would overflow, are kept as a BigDecimal instead of wrapping, so every operation is
+// exact. Like BigDecimal, equals() tells 1.5 and 1.50 apart while compareTo() does not.
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0, 0, null);
+    static final int MAX_SCALE = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final long units;
+    private final int scale;
+    // Set only when the value does not fit units and scale.
+    private final BigDecimal wide;
+    // Built on first use by toBigDecimal().
+    private BigDecimal decimal;
+
+    private Money(long units, int scale, BigDecimal wide) {
+        this.units = units;
+        this.scale = scale;
+        this.wide = wide;
+    }
+
+    public static Money of(long units, int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            return of(BigDecimal.valueOf(units, scale));
+        }
+        return units == 0 && scale == 0 ? ZERO : new Money(units, scale, null);
+    }
+
+    public static Money of(BigDecimal amount) {
+        if (amount.scale() >= 0 && amount.scale() <= MAX_SCALE && amount.unscaledValue().bitLength() <= 63) {
+            return of(amount.unscaledValue().longValue(), amount.scale());
+        }
+        return new Money(0, 0, amount);
+    }
+
+    // Parses an optionally signed decimal such as "-12.50" from text[start, end); returns null if the
+    // text is not one.
+    public static Money parse(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            units = units * 10 + (c - '0');
+            digits++;
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (digits == 0) {
+            return null;
+        }
+        if (digits > MAX_SCALE || scale > MAX_SCALE) {
+            // Already validated, so this cannot throw; it only handles amounts too wide for a long.
+            return of(new BigDecimal(text.subSequence(start, end).toString()));
+        }
+        return of(negative ? -units : units, Math.max(scale, 0));
+    }
+
+    public static Money parse(String text) {
+        return parse(text, 0, text.length());
+    }
+
+    // Whether the value is held as units and scale; getUnits() and getScale() are only valid then.
+    public boolean isCompact() {
+        return wide == null;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    public int getScale() {
+        return wide == null ? scale : wide.scale();
+    }
+
+    // The amount in units of 10^-scale rounded down, clamped to the long range.
+    public long floorUnits(int scale) {
+        if (wide != null || scale < 0 || scale > MAX_SCALE) {
+            BigDecimal units = toBigDecimal().setScale(scale, RoundingMode.FLOOR);
+            if (units.unscaledValue().bitLength() > 63) {
+                return units.signum() > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+            }
+            return units.unscaledValue().longValue();
+        }
+        if (this.scale > scale) {
+            return Math.floorDiv(units, POWERS_OF_TEN[this.scale - scale]);
+        }
+        long rescaled = rescale(units, this.scale, scale);
+        if (rescaled == Long.MIN_VALUE) {
+            return units > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+        return rescaled;
+    }
+
+    // Whether the amount is compact and has no non-zero digits beyond the given scale.
+    public boolean isWholeAt(int scale) {
+        return wide == null && (this.scale <= scale || units % POWERS_OF_TEN[this.scale - scale] == 0);
+    }
+
+    public int signum() {
+        return wide == null ? Long.signum(units) : wide.signum();
+    }
+
+    public Money add(Money other) {
+        if (wide == null && other.wide == null) {
+            int scale = Math.max(this.scale, other.scale);
+            long a = rescale(units, this.scale, scale);
+            long b = rescale(other.units, other.scale, scale);
+            long sum = a + b;
+            if (a != Long.MIN_VALUE && b != Long.MIN_VALUE && ((a ^ sum) & (b ^ sum)) >= 0) {
+                return of(sum, scale);
+            }
+        }
+        return of(toBigDecimal().add(other.toBigDecimal()));
+    }
+
+    public Money subtract(Money other) {
+        return add(other.negate());
+    }
+
+    public Money negate() {
+        if (wide == null && units != Long.MIN_VALUE) {
+            return of(-units, scale);
+        }
+        return of(toBigDecimal().negate());
+    }
+
+    public Money multiply(long factor) {
+        if (wide == null) {
+            long high = Math.multiplyHigh(units, factor);
+            long low = units * factor;
+            if ((high == 0 && low >= 0) || (high == -1 && low < 0)) {
+                return of(low, scale);
+            }
+        }
+        return of(toBigDecimal().multiply(BigDecimal.valueOf(factor)));
+    }
+
+    public BigDecimal divide(long divisor, int scale, RoundingMode roundingMode) {
+        return toBigDecimal().divide(BigDecimal.valueOf(divisor), scale, roundingMode);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        if (wide == null && other.wide == null) {
+            return compare(units, scale, other.units, other.scale);
+        }
+        return toBigDecimal().compareTo(other.toBigDecimal());
+    }
+
+    // Compares a at scale aScale with b at scale bScale, for scales between 0 and MAX_SCALE.
+    static int compare(long a, int aScale, long b, int bScale) {
+        if (aScale == bScale) {
+            return Long.compare(a, b);
+        }
+        if (aScale < bScale) {
+            return -compare(b, bScale, a, aScale);
+        }
+        long factor = POWERS_OF_TEN[aScale - bScale];
+        long high = Math.multiplyHigh(b, factor);
+        long low = b * factor;
+        if ((high == 0 && low >= 0) || (high == -1 && low < 0)) {
+            return Long.compare(a, low);
+        }
+        // b at a's scale does not fit a long, so it is further from zero than a.
+        return b > 0 ? -1 : 1;
+    }
+
+    // Converts units from one scale to a larger one, or to Long.MIN_VALUE if the result does not fit.
+    static long rescale(long units, int from, int to) {
+        if (from == to) {
+            return units;
+        }
+        long factor = POWERS_OF_TEN[to - from];
+        long high = Math.multiplyHigh(units, factor);
+        long low = units * factor;
+        return (high == 0 && low >= 0) || (high == -1 && low < 0) ? low : Long.MIN_VALUE;
+    }
+
+    public BigDecimal toBigDecimal() {
+        if (wide != null) {
+            return wide;
+        }
+        BigDecimal value = decimal;
+        if (value == null) {
+            value = BigDecimal.valueOf(units, scale);
+            decimal = value;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Money)) {
+            return false;
+        }
+        Money other = (Money) o;
+        return wide == null ? other.wide == null && units == other.units && scale == other.scale : wide.equals(other.wide);
+    }
+
+    @Override
+    public int hashCode() {
+        return wide == null ? 31 * Long.hashCode(units) + scale : wide.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toString();
+    }
+}
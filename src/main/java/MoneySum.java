@@ -0,0 +1,76 @@
+import java.math.BigDecimal;
+
+// A running sum of Money amounts that adds in a long at the largest scale seen so far, so summing
+// a ledger creates no objects. If the sum no longer fits a long it carries on in a BigDecimal.
+// The result has the scale BigDecimal.add would give it, so totals print exactly as before.
+public class MoneySum {
+    private long units;
+    private int scale;
+    // Set once the sum has overflowed the long.
+    private BigDecimal wide;
+
+    public void add(Money amount) {
+        add(amount, false);
+    }
+
+    public void subtract(Money amount) {
+        add(amount, true);
+    }
+
+    // Adds units at the given scale, as a column of longs stores them.
+    public void add(long units, int scale) {
+        if (!addCompact(units, scale, false)) {
+            wide = toBigDecimal().add(BigDecimal.valueOf(units, scale));
+        }
+    }
+
+    private void add(Money amount, boolean negate) {
+        if (amount.isCompact() && addCompact(amount.getUnits(), amount.getScale(), negate)) {
+            return;
+        }
+        BigDecimal value = amount.toBigDecimal();
+        wide = toBigDecimal().add(negate ? value.negate() : value);
+    }
+
+    private boolean addCompact(long value, int valueScale, boolean negate) {
+        if (wide != null || valueScale < 0 || valueScale > Money.MAX_SCALE) {
+            return false;
+        }
+        if (valueScale > scale) {
+            long rescaled = Money.rescale(units, scale, valueScale);
+            if (rescaled == Long.MIN_VALUE) {
+                return false;
+            }
+            units = rescaled;
+            scale = valueScale;
+        }
+        value = Money.rescale(value, valueScale, scale);
+        if (negate) {
+            value = -value;
+        }
+        long sum = units + value;
+        if (value == Long.MIN_VALUE || ((units ^ sum) & (value ^ sum)) < 0) {
+            return false;
+        }
+        units = sum;
+        return true;
+    }
+
+    public void clear() {
+        units = 0;
+        scale = 0;
+        wide = null;
+    }
+
+    public int signum() {
+        return wide == null ? Long.signum(units) : wide.signum();
+    }
+
+    public Money get() {
+        return wide == null ? Money.of(units, scale) : Money.of(wide);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return wide == null ? BigDecimal.valueOf(units, scale) : wide;
+    }
+}
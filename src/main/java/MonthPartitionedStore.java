@@ -0,0 +1,369 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Copy of a transaction file split into one segment per calendar month, so date range queries read
+// only the months they overlap. Segments hold "<id>,<csv>" lines; months older than the cold age are
+// gzipped, and rows later appended to them are added as further gzip members.
+//
+// The manifest records how much of the source file the segments cover, along with each segment's
+// length, row count, date range and total. The segments are brought up to date from the source file
+// before each query, and rebuilt from scratch when the file is replaced (e.g. by compaction). Totals
+// are of the rows as written; a month touched by the journal is marked dirty and totalled by scanning.
+//
+// The segments are a second copy of every row beside the source file, which stays the file appends and
+// compaction work on, so the store roughly doubles the disk space a ledger takes until months go cold.
+// The directory can be deleted while the file is closed; it is rebuilt by the next query. Catching up
+// at query time reads only the rows appended since the last query, but the first query after a
+// compaction rewrites every segment.
+public class MonthPartitionedStore {
+    private static final String MANIFEST = "manifest";
+    private static final String SOURCE = "source";
+    private static final String DIRTY = "dirty";
+
+    private final Path source;
+    private final Path directory;
+    private int coldAfterMonths;
+    private final NavigableMap<YearMonth, Segment> segments = new TreeMap<>();
+    private final Set<YearMonth> dirtyMonths = new TreeSet<>();
+    private String sourceKey;
+    private long sourceLength;
+    private int rowCount;
+    private int journalRecords;
+    private boolean allDirty;
+    private boolean changed;
+
+    public MonthPartitionedStore(Path source, Path directory, int coldAfterMonths) throws IOException {
+        this.source = source;
+        this.directory = directory;
+        this.coldAfterMonths = coldAfterMonths;
+        Files.createDirectories(directory);
+        if (!load()) {
+            clear();
+        }
+    }
+
+    public void setColdAfterMonths(int months) {
+        this.coldAfterMonths = months;
+    }
+
+    // Records journal appends made by the owning handler, so the months they touch are totalled by scanning.
+    public void recordChange(int journalRecordCount, LocalDate... dates) {
+        for (LocalDate date : dates) {
+            dirtyMonths.add(YearMonth.from(date));
+        }
+        journalRecords = journalRecordCount;
+        changed = true;
+    }
+
+    // Appends rows written to the source file since the last call, rebuilding if it was replaced.
+    public void catchUp(TransactionJournal journal) throws IOException {
+        if (journal.getRecordCount() != journalRecords) {
+            // Journal records were added without going through recordChange, e.g. before a crash.
+            allDirty = true;
+            journalRecords = journal.getRecordCount();
+            changed = true;
+        }
+        if (!Files.exists(source)) {
+            if (sourceLength > 0) {
+                clear();
+            }
+            save();
+            return;
+        }
+        String key = CSVFileHandler.fileKey(source);
+        if (!key.equals(sourceKey) || Files.size(source) < sourceLength) {
+            clear();
+            sourceKey = key;
+            journalRecords = journal.getRecordCount();
+            for (Transaction updated : journal.getOverrides().values()) {
+                if (updated != null) {
+                    dirtyMonths.add(YearMonth.from((LocalDate) updated.getDate()));
+                }
+            }
+        }
+        Map<Integer, Transaction> overrides = journal.getOverrides();
+        Map<YearMonth, StringBuilder> appended = new TreeMap<>();
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long end = MappedTransactionReader.lastLineEnd(channel, sourceLength, channel.size());
+            if (end > sourceLength) {
+                new MappedTransactionReader().read(channel, sourceLength, end, transaction -> {
+                    int id = journal.idOf(++rowCount);
+                    LocalDate date = (LocalDate) transaction.getDate();
+                    YearMonth month = YearMonth.from(date);
+                    Segment segment = segments.computeIfAbsent(month, Segment::new);
+                    segment.add(date, transaction.getMoney());
+                    if (overrides.containsKey(id)) {
+                        dirtyMonths.add(month);
+                    }
+                    appended.computeIfAbsent(month, m -> new StringBuilder())
+                            .append(id).append(',').append(transaction.toCSV()).append('\n');
+                });
+                for (Map.Entry<YearMonth, StringBuilder> entry : appended.entrySet()) {
+                    Segment segment = segments.get(entry.getKey());
+                    segment.bytes += write(segment, entry.getValue().toString());
+                }
+                sourceLength = end;
+                changed = true;
+            }
+        }
+        compressColdSegments();
+        save();
+    }
+
+    public List<Transaction> search(LocalDate startDate, LocalDate endDate, TransactionJournal journal) throws IOException {
+        List<Transaction> result = new ArrayList<>();
+        if (startDate.isAfter(endDate)) {
+            return result;
+        }
+        Map<Integer, Transaction> overrides = journal.getOverrides();
+        for (Segment segment : segments.subMap(YearMonth.from(startDate), true, YearMonth.from(endDate), true).values()) {
+            if (segment.maxDate.isBefore(startDate) || segment.minDate.isAfter(endDate)) {
+                continue;
+            }
+            for (Transaction transaction : readSegment(segment)) {
+                LocalDate date = (LocalDate) transaction.getDate();
+                if (!overrides.containsKey(transaction.getId()) && !date.isBefore(startDate) && !date.isAfter(endDate)) {
+                    result.add(transaction);
+                }
+            }
+        }
+        // Updated rows are matched on their new date wherever the original row was filed.
+        for (Transaction updated : overrides.values()) {
+            if (updated != null) {
+                LocalDate date = (LocalDate) updated.getDate();
+                if (!date.isBefore(startDate) && !date.isAfter(endDate)) {
+                    result.add(updated);
+                }
+            }
+        }
+        result.sort(Comparator.comparingInt(Transaction::getId));
+        return result;
+    }
+
+    public BigDecimal total(YearMonth month, TransactionJournal journal) throws IOException {
+        if (!allDirty && !dirtyMonths.contains(month)) {
+            Segment segment = segments.get(month);
+            return segment != null ? segment.total.toBigDecimal() : BigDecimal.ZERO;
+        }
+        MoneySum total = new MoneySum();
+        for (Transaction transaction : search(month.atDay(1), month.atEndOfMonth(), journal)) {
+            total.add(transaction.getMoney());
+        }
+        return total.toBigDecimal();
+    }
+
+    public void save() throws IOException {
+        if (!changed) {
+            return;
+        }
+        Path temp = directory.resolve(MANIFEST + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            out.write(SOURCE + "," + sourceLength + "," + rowCount + "," + journalRecords + "," + (allDirty ? 1 : 0)
+                    + "," + sourceKey);
+            out.newLine();
+            out.write(DIRTY);
+            for (YearMonth month : dirtyMonths) {
+                out.write("," + month);
+            }
+            out.newLine();
+            for (Segment segment : segments.values()) {
+                out.write(segment.month + "," + segment.bytes + "," + segment.rows + "," + segment.minDate + ","
+                        + segment.maxDate + "," + segment.total.toBigDecimal().toPlainString() + "," + (segment.cold ? 1 : 0));
+                out.newLine();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        changed = false;
+        deleteUnreferencedFiles();
+    }
+
+    // Reads the manifest and trims segments back to the length it records, undoing appends made
+    // after the last save. Returns false if the manifest is missing or does not match the segments.
+    private boolean load() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return false;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String[] header = reader.readLine().split(",", 6);
+            if (header.length != 6 || !header[0].equals(SOURCE)) {
+                return false;
+            }
+            sourceLength = Long.parseLong(header[1]);
+            rowCount = Integer.parseInt(header[2]);
+            journalRecords = Integer.parseInt(header[3]);
+            allDirty = header[4].equals("1");
+            sourceKey = header[5];
+            String[] dirty = reader.readLine().split(",");
+            if (!dirty[0].equals(DIRTY)) {
+                return false;
+            }
+            for (int i = 1; i < dirty.length; i++) {
+                dirtyMonths.add(YearMonth.parse(dirty[i]));
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                Segment segment = new Segment(YearMonth.parse(fields[0]));
+                segment.bytes = Long.parseLong(fields[1]);
+                segment.rows = Integer.parseInt(fields[2]);
+                segment.minDate = LocalDate.parse(fields[3]);
+                segment.maxDate = LocalDate.parse(fields[4]);
+                segment.total.add(Money.of(new BigDecimal(fields[5])));
+                segment.cold = fields[6].equals("1");
+                Path file = segmentPath(segment);
+                if (!Files.exists(file) || Files.size(file) < segment.bytes) {
+                    return false;
+                }
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(segment.bytes);
+                }
+                segments.put(segment.month, segment);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Rebuilding month partitions, unreadable manifest: " + e.getMessage());
+            return false;
+        }
+        deleteUnreferencedFiles();
+        return true;
+    }
+
+    private void clear() throws IOException {
+        segments.clear();
+        dirtyMonths.clear();
+        sourceKey = null;
+        sourceLength = 0;
+        rowCount = 0;
+        allDirty = false;
+        changed = true;
+        deleteUnreferencedFiles();
+    }
+
+    private void compressColdSegments() throws IOException {
+        YearMonth cutoff = YearMonth.now().minusMonths(coldAfterMonths);
+        for (Segment segment : segments.headMap(cutoff, false).values()) {
+            if (segment.cold) {
+                continue;
+            }
+            Path plain = segmentPath(segment);
+            segment.cold = true;
+            Path compressed = segmentPath(segment);
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+                Files.copy(plain, out);
+            }
+            try (FileChannel channel = FileChannel.open(compressed, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            segment.bytes = Files.size(compressed);
+            changed = true;
+        }
+    }
+
+    // Appends rows to a segment and returns the number of bytes written.
+    private long write(Segment segment, String rows) throws IOException {
+        Path file = segmentPath(segment);
+        long before = Files.exists(file) ? Files.size(file) : 0;
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (segment.cold) {
+                GZIPOutputStream gzip = new GZIPOutputStream(out);
+                gzip.write(rows.getBytes(StandardCharsets.UTF_8));
+                gzip.finish();
+            } else {
+                out.write(rows.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return Files.size(file) - before;
+    }
+
+    private List<Transaction> readSegment(Segment segment) throws IOException {
+        List<Transaction> transactions = new ArrayList<>(segment.rows);
+        InputStream in = Files.newInputStream(segmentPath(segment));
+        if (segment.cold) {
+            in = new GZIPInputStream(in);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(',');
+                Transaction transaction = TransactionParser.parse(line.substring(separator + 1));
+                if (transaction != null) {
+                    transaction.setId(Integer.parseInt(line.substring(0, separator)));
+                    transactions.add(transaction);
+                }
+            }
+        }
+        return transactions;
+    }
+
+    private void deleteUnreferencedFiles() throws IOException {
+        Set<Path> referenced = new HashSet<>();
+        referenced.add(directory.resolve(MANIFEST));
+        for (Segment segment : segments.values()) {
+            referenced.add(segmentPath(segment));
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (!referenced.contains(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private Path segmentPath(Segment segment) {
+        return directory.resolve(segment.month + (segment.cold ? ".csv.gz" : ".csv"));
+    }
+
+    private static class Segment {
+        private final YearMonth month;
+        private long bytes;
+        private int rows;
+        private LocalDate minDate;
+        private LocalDate maxDate;
+        private final MoneySum total = new MoneySum();
+        private boolean cold;
+
+        Segment(YearMonth month) {
+            this.month = month;
+        }
+
+        void add(LocalDate date, Money amount) {
+            rows++;
+            if (minDate == null || date.isBefore(minDate)) {
+                minDate = date;
+            }
+            if (maxDate == null || date.isAfter(maxDate)) {
+                maxDate = date;
+            }
+            total.add(amount);
+        }
+    }
+}
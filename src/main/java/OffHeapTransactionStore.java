@@ -0,0 +1,412 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+// Transactions kept outside the Java heap as fixed-width records in ByteBuffer segments, with their
+// strings stored once per distinct value in a separate arena of length-prefixed UTF-8 that records
+// point into. Segments are direct buffers, or regions mapped from scratch files when a directory is
+// given; mapped segments are not limited by -XX:MaxDirectMemorySize and are paged by the OS, so the
+// store can outgrow both the heap and physical memory. The heap only holds segment handles and
+// small fixed-size caches, so row count does not add to GC work.
+// Scratch files are created empty and deleted on close(); the store is not meant to be reopened.
+public class OffHeapTransactionStore extends AbstractList<Transaction> implements TransactionRows, RandomAccess, Closeable {
+    private static final int RECORD_SIZE = 56;
+    private static final int ID = 0;
+    private static final int EPOCH_DAY = 4;
+    // Unscaled amount, or the arena reference of its text when the scale is WIDE.
+    private static final int AMOUNT = 8;
+    private static final int NANO_OF_DAY = 16;
+    private static final int DESCRIPTION = 24;
+    private static final int VENDOR = 32;
+    private static final int TYPE = 40;
+    private static final int SCALE = 48;
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int RECORDS_PER_SEGMENT = 1 << SEGMENT_SHIFT;
+    private static final int ARENA_SEGMENT_SIZE = 16 << 20;
+    private static final byte WIDE = Byte.MIN_VALUE;
+    private static final long NULL = -1;
+    private static final int CACHE_SIZE = 4096;
+
+    private final Path recordPath;
+    private final Path arenaPath;
+    private final FileChannel recordFile;
+    private final FileChannel arenaFile;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final List<ByteBuffer> arena = new ArrayList<>();
+    private long arenaEnd;
+    private int size;
+    // Whether ids rise with row number, so findRow() can binary search; rechecked when idsChecked is false.
+    private boolean idsAscending = true;
+    private boolean idsChecked = true;
+    // Strings recently stored, so a repeated value points at the same arena bytes.
+    private final String[] storedStrings = new String[CACHE_SIZE];
+    private final long[] storedRefs = new long[CACHE_SIZE];
+    // Strings recently read, so scanning rows with repeated values does not decode them again.
+    private final String[] readStrings = new String[CACHE_SIZE];
+    private final long[] readRefs = new long[CACHE_SIZE];
+
+    // Keeps segments in direct buffers, which count against -XX:MaxDirectMemorySize.
+    public OffHeapTransactionStore() {
+        recordPath = null;
+        arenaPath = null;
+        recordFile = null;
+        arenaFile = null;
+    }
+
+    // Keeps segments in files mapped from the directory.
+    public OffHeapTransactionStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        recordPath = directory.resolve("transactions.records");
+        arenaPath = directory.resolve("transactions.strings");
+        recordFile = open(recordPath);
+        arenaFile = open(arenaPath);
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Transaction get(int row) {
+        checkRow(row);
+        ByteBuffer segment = segment(row);
+        int offset = offset(row);
+        Transaction transaction = Transaction.restore(segment.getInt(offset + ID), amount(segment, offset),
+                TemporalCache.ofEpochDay(segment.getInt(offset + EPOCH_DAY)),
+                TemporalCache.ofNanoOfDay(segment.getLong(offset + NANO_OF_DAY)),
+                readString(segment.getLong(offset + DESCRIPTION)), readString(segment.getLong(offset + VENDOR)));
+        transaction.setType(readString(segment.getLong(offset + TYPE)));
+        return transaction;
+    }
+
+    @Override
+    public Transaction set(int row, Transaction transaction) {
+        Transaction previous = get(row);
+        store(row, transaction);
+        if (previous.getId() != transaction.getId()) {
+            idsChecked = false;
+        }
+        return previous;
+    }
+
+    @Override
+    public void add(int row, Transaction transaction) {
+        if (row < 0 || row > size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + size);
+        }
+        if (size == (long) segments.size() << SEGMENT_SHIFT) {
+            if (size == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Store is full");
+            }
+            segments.add(allocate(recordFile, segments.size(), RECORDS_PER_SEGMENT * RECORD_SIZE));
+        }
+        for (int i = size; i > row; i--) {
+            copyRecord(i - 1, i);
+        }
+        size++;
+        store(row, transaction);
+        if (row < size - 1) {
+            idsChecked = false;
+        } else if (idsChecked && idsAscending && row > 0) {
+            idsAscending = getId(row - 1) < transaction.getId();
+        }
+        modCount++;
+    }
+
+    @Override
+    public Transaction remove(int row) {
+        Transaction previous = get(row);
+        for (int i = row + 1; i < size; i++) {
+            copyRecord(i, i - 1);
+        }
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int row = indexOf(o);
+        if (row < 0) {
+            return false;
+        }
+        remove(row);
+        return true;
+    }
+
+    @Override
+    public void removeRows(BitSet rows) {
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            if (!rows.get(row)) {
+                if (kept != row) {
+                    copyRecord(row, kept);
+                }
+                kept++;
+            }
+        }
+        size = kept;
+        modCount++;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return o instanceof Transaction ? findRow(((Transaction) o).getId()) : -1;
+    }
+
+    // Binary searches while ids rise with row number, as they do for rows appended in id order.
+    @Override
+    public int findRow(int id) {
+        if (!idsChecked) {
+            idsAscending = true;
+            for (int row = 1; row < size && idsAscending; row++) {
+                idsAscending = getId(row - 1) < getId(row);
+            }
+            idsChecked = true;
+        }
+        if (!idsAscending) {
+            for (int row = 0; row < size; row++) {
+                if (getId(row) == id) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = getId(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        arenaEnd = 0;
+        idsAscending = true;
+        idsChecked = true;
+        Arrays.fill(storedStrings, null);
+        Arrays.fill(readStrings, null);
+        modCount++;
+    }
+
+    @Override
+    public int getId(int row) {
+        checkRow(row);
+        return segment(row).getInt(offset(row) + ID);
+    }
+
+    @Override
+    public void setId(int row, int id) {
+        checkRow(row);
+        segment(row).putInt(offset(row) + ID, id);
+        idsChecked = false;
+    }
+
+    public BigDecimal getAmount(int row) {
+        return getMoney(row).toBigDecimal();
+    }
+
+    public Money getMoney(int row) {
+        checkRow(row);
+        return amount(segment(row), offset(row));
+    }
+
+    // Compares the row's amount with the given one, reading it in place unless either is too wide for a long.
+    public int compareAmount(int row, Money amount) {
+        checkRow(row);
+        ByteBuffer segment = segment(row);
+        int offset = offset(row);
+        byte scale = segment.get(offset + SCALE);
+        if (scale == WIDE || !amount.isCompact()) {
+            return amount(segment, offset).compareTo(amount);
+        }
+        return Money.compare(segment.getLong(offset + AMOUNT), scale, amount.getUnits(), amount.getScale());
+    }
+
+    public int compareAmounts(int row, int other) {
+        checkRow(row);
+        checkRow(other);
+        ByteBuffer segment = segment(row);
+        ByteBuffer otherSegment = segment(other);
+        int offset = offset(row);
+        int otherOffset = offset(other);
+        byte scale = segment.get(offset + SCALE);
+        byte otherScale = otherSegment.get(otherOffset + SCALE);
+        if (scale == WIDE || otherScale == WIDE) {
+            return amount(segment, offset).compareTo(amount(otherSegment, otherOffset));
+        }
+        return Money.compare(segment.getLong(offset + AMOUNT), scale, otherSegment.getLong(otherOffset + AMOUNT), otherScale);
+    }
+
+    public long getEpochDay(int row) {
+        checkRow(row);
+        return segment(row).getInt(offset(row) + EPOCH_DAY);
+    }
+
+    public LocalDate getDate(int row) {
+        return TemporalCache.ofEpochDay(getEpochDay(row));
+    }
+
+    public LocalTime getTime(int row) {
+        checkRow(row);
+        return TemporalCache.ofNanoOfDay(segment(row).getLong(offset(row) + NANO_OF_DAY));
+    }
+
+    public String getVendor(int row) {
+        checkRow(row);
+        return readString(segment(row).getLong(offset(row) + VENDOR));
+    }
+
+    // Releases the segments and deletes any scratch files. Mapped regions stay reserved until the
+    // garbage collector frees their buffers, as Java has no way to unmap them sooner.
+    @Override
+    public void close() throws IOException {
+        segments.clear();
+        arena.clear();
+        size = 0;
+        if (recordFile != null) {
+            recordFile.close();
+            arenaFile.close();
+            Files.deleteIfExists(recordPath);
+            Files.deleteIfExists(arenaPath);
+        }
+    }
+
+    private void store(int row, Transaction transaction) {
+        ByteBuffer segment = segment(row);
+        int offset = offset(row);
+        Money amount = transaction.getMoney();
+        if (!amount.isCompact()) {
+            segment.putLong(offset + AMOUNT, storeString(amount.toString()));
+            segment.put(offset + SCALE, WIDE);
+        } else {
+            segment.putLong(offset + AMOUNT, amount.getUnits());
+            segment.put(offset + SCALE, (byte) amount.getScale());
+        }
+        segment.putInt(offset + ID, transaction.getId());
+        segment.putInt(offset + EPOCH_DAY, (int) ((LocalDate) transaction.getDate()).toEpochDay());
+        segment.putLong(offset + NANO_OF_DAY, transaction.getTime().toNanoOfDay());
+        segment.putLong(offset + DESCRIPTION, storeString(transaction.getDescription()));
+        segment.putLong(offset + VENDOR, storeString(transaction.getVendor()));
+        segment.putLong(offset + TYPE, storeString(transaction.getType()));
+    }
+
+    private Money amount(ByteBuffer segment, int offset) {
+        byte scale = segment.get(offset + SCALE);
+        long amount = segment.getLong(offset + AMOUNT);
+        return scale == WIDE ? Money.of(new BigDecimal(readText(amount))) : Money.of(amount, scale);
+    }
+
+    private long storeString(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        int slot = value.hashCode() & (CACHE_SIZE - 1);
+        if (value.equals(storedStrings[slot])) {
+            return storedRefs[slot];
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Integer.BYTES + bytes.length;
+        if (length > ARENA_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("String of " + bytes.length + " bytes is too long for the store");
+        }
+        if (arenaEnd % ARENA_SEGMENT_SIZE + length > ARENA_SEGMENT_SIZE) {
+            arenaEnd += ARENA_SEGMENT_SIZE - arenaEnd % ARENA_SEGMENT_SIZE;
+        }
+        int index = (int) (arenaEnd / ARENA_SEGMENT_SIZE);
+        while (arena.size() <= index) {
+            arena.add(allocate(arenaFile, arena.size(), ARENA_SEGMENT_SIZE));
+        }
+        ByteBuffer segment = arena.get(index);
+        int offset = (int) (arenaEnd % ARENA_SEGMENT_SIZE);
+        segment.putInt(offset, bytes.length);
+        segment.put(offset + Integer.BYTES, bytes);
+        long ref = arenaEnd;
+        arenaEnd += length;
+        storedStrings[slot] = value;
+        storedRefs[slot] = ref;
+        return ref;
+    }
+
+    private String readString(long ref) {
+        if (ref == NULL) {
+            return null;
+        }
+        int slot = (int) (ref ^ (ref >>> 32)) * 0x9E3779B9 >>> 20;
+        if (readRefs[slot] == ref && readStrings[slot] != null) {
+            return readStrings[slot];
+        }
+        String value = readText(ref);
+        readRefs[slot] = ref;
+        readStrings[slot] = value;
+        return value;
+    }
+
+    private String readText(long ref) {
+        ByteBuffer segment = arena.get((int) (ref / ARENA_SEGMENT_SIZE));
+        int offset = (int) (ref % ARENA_SEGMENT_SIZE);
+        byte[] bytes = new byte[segment.getInt(offset)];
+        segment.get(offset + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void copyRecord(int from, int to) {
+        segment(to).put(offset(to), segment(from), offset(from), RECORD_SIZE);
+    }
+
+    private static ByteBuffer allocate(FileChannel file, int index, int bytes) {
+        if (file == null) {
+            return ByteBuffer.allocateDirect(bytes);
+        }
+        try {
+            return file.map(FileChannel.MapMode.READ_WRITE, (long) index * bytes, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map store segment", e);
+        }
+    }
+
+    private ByteBuffer segment(int row) {
+        return segments.get(row >>> SEGMENT_SHIFT);
+    }
+
+    private static int offset(int row) {
+        return (row & (RECORDS_PER_SEGMENT - 1)) * RECORD_SIZE;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + size);
+        }
+    }
+}
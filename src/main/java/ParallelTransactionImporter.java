@@ -0,0 +1,105 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Splits a transaction file into line-aligned byte ranges and parses them concurrently.
+public class ParallelTransactionImporter {
+    private static final long MIN_CHUNK_SIZE = 4L * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    public static List<Transaction> read(Path path, ForkJoinPool pool) throws IOException {
+        return read(path, pool, Files.exists(path) ? Files.size(path) : 0);
+    }
+
+    public static List<Transaction> read(Path path, ForkJoinPool pool, long length) throws IOException {
+        return read(path, pool, length, new TransactionInterner());
+    }
+
+    // The interner is shared by all chunks, so equal values parsed on different threads end up as one.
+    public static List<Transaction> read(Path path, ForkJoinPool pool, long length, TransactionInterner interner) throws IOException {
+        if (!Files.exists(path)) {
+            return new ArrayList<>();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = Math.min(length, channel.size());
+            long[] bounds = chunkBounds(channel, size, pool.getParallelism() * CHUNKS_PER_THREAD);
+            List<Future<List<Transaction>>> chunks = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                chunks.add(pool.submit(() -> new MappedTransactionReader(interner).read(channel, start, end)));
+            }
+            // Chunks are merged in file order, so callers can number rows afterwards.
+            List<List<Transaction>> parsed = new ArrayList<>(chunks.size());
+            int total = 0;
+            for (Future<List<Transaction>> chunk : chunks) {
+                List<Transaction> rows = join(chunk);
+                parsed.add(rows);
+                total += rows.size();
+            }
+            List<Transaction> transactions = new ArrayList<>(total);
+            for (List<Transaction> rows : parsed) {
+                transactions.addAll(rows);
+            }
+            return transactions;
+        }
+    }
+
+    private static long[] chunkBounds(FileChannel channel, long size, int chunks) throws IOException {
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, size / Math.max(chunks, 1));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long position = 0;
+        while (position < size) {
+            position = nextLineStart(channel, Math.min(size, position + chunkSize), size);
+            bounds.add(position);
+        }
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // Never returns past size, even if the file has grown beyond it since.
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), size - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static List<Transaction> join(Future<List<Transaction>> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing transactions", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to import transactions", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.math.BigDecimal;
+
+// Balance, deposit and payment totals and count of a set of transactions, kept up to date as
+// amounts are added and removed so none of them needs a pass over the transactions.
+public class RunningTotals {
+    private final MoneySum balance = new MoneySum();
+    private final MoneySum depositTotal = new MoneySum();
+    private final MoneySum paymentTotal = new MoneySum();
+    private int count;
+
+    public void add(Money amount) {
+        balance.add(amount);
+        if (amount.signum() > 0) {
+            depositTotal.add(amount);
+        } else if (amount.signum() < 0) {
+            paymentTotal.add(amount);
+        }
+        count++;
+    }
+
+    public void remove(Money amount) {
+        balance.subtract(amount);
+        if (amount.signum() > 0) {
+            depositTotal.subtract(amount);
+        } else if (amount.signum() < 0) {
+            paymentTotal.subtract(amount);
+        }
+        count--;
+    }
+
+    public void clear() {
+        balance.clear();
+        depositTotal.clear();
+        paymentTotal.clear();
+        count = 0;
+    }
+
+    public BigDecimal getBalance() {
+        return balance.toBigDecimal();
+    }
+
+    public BigDecimal getDepositTotal() {
+        return depositTotal.toBigDecimal();
+    }
+
+    // Payments are negative amounts, so this total is zero or negative.
+    public BigDecimal getPaymentTotal() {
+        return paymentTotal.toBigDecimal();
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,91 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Shared LocalDate and LocalTime instances, so rows that fall on the same day, or at the same whole
+// second, reuse one object instead of each holding its own. Both types are immutable, so two threads
+// racing to fill a slot only build equal copies. Days outside the cached years and times with a
+// fraction of a second are created as usual.
+public class TemporalCache {
+    private static final int FIRST_YEAR = 1900;
+    private static final int LAST_YEAR = 2199;
+    private static final long DAYS_0000_TO_1970 = 719528;
+    private static final long FIRST_DAY = LocalDate.of(FIRST_YEAR, 1, 1).toEpochDay();
+    private static final LocalDate[] DATES = new LocalDate[(int) (LocalDate.of(LAST_YEAR + 1, 1, 1).toEpochDay() - FIRST_DAY)];
+    private static final LocalTime[] TIMES = new LocalTime[24 * 60 * 60];
+
+    // Expects a valid date, as TransactionParser.date() checks before calling.
+    public static LocalDate date(int year, int month, int day) {
+        if (year < FIRST_YEAR || year > LAST_YEAR) {
+            return LocalDate.of(year, month, day);
+        }
+        int index = (int) (epochDay(year, month, day) - FIRST_DAY);
+        LocalDate date = DATES[index];
+        if (date == null) {
+            date = LocalDate.of(year, month, day);
+            DATES[index] = date;
+        }
+        return date;
+    }
+
+    public static LocalDate ofEpochDay(long epochDay) {
+        long index = epochDay - FIRST_DAY;
+        if (index < 0 || index >= DATES.length) {
+            return LocalDate.ofEpochDay(epochDay);
+        }
+        LocalDate date = DATES[(int) index];
+        if (date == null) {
+            date = LocalDate.ofEpochDay(epochDay);
+            DATES[(int) index] = date;
+        }
+        return date;
+    }
+
+    public static LocalDate canonical(LocalDate date) {
+        return date == null || date.getYear() < FIRST_YEAR || date.getYear() > LAST_YEAR ? date : ofEpochDay(date.toEpochDay());
+    }
+
+    // Expects a valid time, as TransactionParser.time() checks before calling.
+    public static LocalTime time(int hour, int minute, int second, int nano) {
+        if (nano != 0) {
+            return LocalTime.of(hour, minute, second, nano);
+        }
+        int index = hour * 3600 + minute * 60 + second;
+        LocalTime time = TIMES[index];
+        if (time == null) {
+            time = LocalTime.of(hour, minute, second);
+            TIMES[index] = time;
+        }
+        return time;
+    }
+
+    public static LocalTime ofNanoOfDay(long nanoOfDay) {
+        if (nanoOfDay % 1_000_000_000L != 0) {
+            return LocalTime.ofNanoOfDay(nanoOfDay);
+        }
+        int second = (int) (nanoOfDay / 1_000_000_000L);
+        return time(second / 3600, second / 60 % 60, second % 60, 0);
+    }
+
+    public static LocalTime canonical(LocalTime time) {
+        return time == null || time.getNano() != 0 ? time : time(time.getHour(), time.getMinute(), time.getSecond(), 0);
+    }
+
+    // Same arithmetic as LocalDate.toEpochDay(), without creating the LocalDate; years are not negative here.
+    private static long epochDay(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y + (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+}
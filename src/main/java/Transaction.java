@@ -3,23 +3,29 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.chrono.ChronoLocalDate;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.List;
-import java.util.Locale;
 import java.util.stream.Collectors;
 
 public class Transaction implements Comparable<Transaction> {
-    private static int nextId = 1;
+    private static volatile IdAllocator idAllocator = new BlockIdAllocator();
     private String type;
     private int id;
-    private BigDecimal amount;
+    private Money amount;
     private LocalDate date;
     private LocalTime time;
     private String description;
     private String vendor;
 
     public Transaction(BigDecimal amount, LocalDate date, LocalTime time, String description, String vendor) {
-        this.id = nextId++;
+        this(Money.of(amount), date, time, description, vendor);
+    }
+
+    public Transaction(Money amount, LocalDate date, LocalTime time, String description, String vendor) {
+        this(idAllocator.next(), amount, date, time, description, vendor);
+    }
+
+    private Transaction(int id, Money amount, LocalDate date, LocalTime time, String description, String vendor) {
+        this.id = id;
         this.amount = amount;
         this.date = date;
         this.time = time;
@@ -29,33 +35,41 @@ public class Transaction implements Comparable<Transaction> {
     }
 
 
+    // Parses each field once, with the same parsers used for rows read from a file.
     public Transaction(String amount, String date, String time, String description, String vendor) throws InvalidInputException {
-        if (!isValidDate(date)) {
+        LocalDate parsedDate = TransactionParser.parseDate(date, 0, date.length());
+        if (parsedDate == null) {
             throw new InvalidInputException("Invalid date format");
         }
-        if (!isValidAmount(amount)) {
+        Money parsedAmount = TransactionParser.parseAmount(amount, 0, amount.length());
+        if (parsedAmount == null) {
             throw new InvalidInputException("Invalid amount");
         }
-        if (!isValidTime(time)) {
+        LocalTime parsedTime = TransactionParser.parseTime(time, 0, time.length());
+        if (parsedTime == null) {
             throw new InvalidInputException("Invalid time format");
         }
-
-        this.id = nextId++;
-        this.amount = new BigDecimal(amount, Locale.US);
-        this.date = LocalDate.parse(date, DateTimeFormatter.ISO_DATE);
-        this.time = LocalTime.parse(time, DateTimeFormatter.ISO_TIME);
+        this.id = idAllocator.next();
+        this.amount = parsedAmount;
+        this.date = parsedDate;
+        this.time = parsedTime;
         this.description = description;
         this.vendor = vendor;
         this.type = "";
     }
 
-    public static boolean isValidAmount(String amount) {
-        try {
-            new BigDecimal(amount, Locale.US);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
-        }
+    // Rebuilds a stored transaction under the id it was stored with, without using up a new one.
+    public static Transaction restore(int id, Money amount, LocalDate date, LocalTime time, String description, String vendor) {
+        idAllocator.advancePast(id);
+        return new Transaction(id, amount, date, time, description, vendor);
+    }
+
+    public static IdAllocator getIdAllocator() {
+        return idAllocator;
+    }
+
+    public static void setIdAllocator(IdAllocator allocator) {
+        idAllocator = allocator;
     }
 
     public List<Transaction> getTransactionsByDateRange(LocalDate startDate, LocalDate endDate) {
@@ -72,29 +86,29 @@ public class Transaction implements Comparable<Transaction> {
         return null;
     }
 
-    public static boolean isValidDate(String date) {
-        try {
-            LocalDate.parse(date, DateTimeFormatter.ISO_DATE);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
-
     public int getId() {
         return id;
     }
 
+    // New transactions are given ids above any set here, such as row numbers loaded from a file.
     public void setId(int id) {
         this.id = id;
+        idAllocator.advancePast(id);
     }
 
     public BigDecimal getAmount() {
+        return amount.toBigDecimal();
+    }
+
+    public Money getMoney() {
         return amount;
     }
 
     public void setAmount(BigDecimal amount) {
+        this.amount = Money.of(amount);
+    }
+
+    public void setAmount(Money amount) {
         this.amount = amount;
     }
 
@@ -147,43 +161,27 @@ public class Transaction implements Comparable<Transaction> {
         return time.compareTo(other.time);
     }
 
-    public static boolean isValidTime(String timeString) {
-        try {
-            LocalTime.parse(timeString, DateTimeFormatter.ISO_TIME);
-            return true;
-        } catch (DateTimeParseException e) {
-            return false;
+    public static Transaction parse(String line) throws IllegalArgumentException {
+        Transaction transaction = TransactionParser.parse(line);
+        if (transaction == null) {
+            throw new IllegalArgumentException("Invalid transaction line: " + line);
         }
+        return transaction;
     }
 
-    public static boolean isValidTransaction(String[] parts) {
-        if (parts.length != 5) {
-            return false;
-        }
-        if (!isValidAmount(parts[0])) {
-            return false;
-        }
-        if (!isValidDate(parts[1])) {
-            return false;
-        }
-        if (!isValidTime(parts[2])) {
-            return false;
-        }
-        return true;
+    public String toCSV() {
+        DateTimeFormatter formatter = DateTimeFormatter.ISO_DATE;
+        return amount.toString() + "," + date.format(formatter) + "," + time.format(DateTimeFormatter.ISO_TIME) + "," + description + "," + vendor;
     }
 
+
+
     public static Transaction fromString(String transactionString) throws InvalidTransactionException {
-        String[] parts = transactionString.split(",");
-        if (!isValidTransaction(parts)) {
+        Transaction transaction = TransactionParser.parse(transactionString);
+        if (transaction == null) {
             throw new InvalidTransactionException("Invalid transaction format: " + transactionString);
-        } else {
-            BigDecimal amount = new BigDecimal(parts[0], Locale.US);
-            LocalDate date = LocalDate.parse(parts[1], DateTimeFormatter.ISO_DATE);
-            LocalTime time = LocalTime.parse(parts[2], DateTimeFormatter.ISO_TIME);
-            String description = parts[3];
-            String vendor = parts[4];
-            return new Transaction(amount, date, time, description, vendor);
         }
+        return transaction;
     }
 
     public static class InvalidInputException extends Exception {
@@ -0,0 +1,258 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntUnaryOperator;
+
+// Rewrites a transaction file without its deleted and superseded rows.
+//
+// The expensive part, copying every live row into a temporary file, runs on a background thread
+// against the prefix of the file that existed when compaction started. swap() then appends the rows
+// and journal records written since, and commits by atomically replacing the journal with one whose
+// first record names the temporary file; the file itself is moved into place last. recover() rolls
+// that final move forward if a crash interrupts it.
+//
+// Rows keep their ids: the new journal records where the numbering of the compacted file skips the
+// ids of dropped rows, and where the ids of rows appended later continue from.
+//
+// The temporary file stays locked while it is written, so recover() run by another handler or process
+// leaves it alone. swap() runs under the file's append lock, and gives up if the file or journal was
+// replaced since compaction started, e.g. by another handler's compaction.
+public class TransactionFileCompactor {
+    // Temporary files of compactions running in this process. Closing a second channel on a file would
+    // drop this process's lock on it, so recover() looks here instead of trying the lock.
+    private static final Set<Path> RUNNING = ConcurrentHashMap.newKeySet();
+
+    private final Path path;
+    private final Path journalPath;
+    private final Path temp;
+    private final long token;
+    private final String sourceKey;
+    private final String journalKey;
+    private final long sourceLength;
+    private final int rowCount;
+    private final long journalLength;
+    private final Map<Integer, Transaction> overrides;
+    private final IntUnaryOperator ids;
+    private final CompletableFuture<Void> rewritten = new CompletableFuture<>();
+    private final StringBuilder rowRecords = new StringBuilder();
+    private FileChannel tempChannel;
+    private int liveRows;
+
+    public TransactionFileCompactor(Path path, Path journalPath, long sourceLength, int rowCount,
+                                    long journalLength, Map<Integer, Transaction> overrides, IntUnaryOperator ids)
+            throws IOException {
+        this.path = path;
+        this.journalPath = journalPath;
+        this.token = System.nanoTime();
+        this.temp = tempPath(path, token);
+        this.sourceKey = CSVFileHandler.fileKey(path);
+        this.journalKey = CSVFileHandler.fileKey(journalPath);
+        this.sourceLength = sourceLength;
+        this.rowCount = rowCount;
+        this.journalLength = journalLength;
+        this.overrides = overrides;
+        this.ids = ids;
+    }
+
+    public void start() {
+        RUNNING.add(temp.toAbsolutePath().normalize());
+        Thread thread = new Thread(() -> {
+            try {
+                rewrite();
+                rewritten.complete(null);
+            } catch (IOException | RuntimeException e) {
+                rewritten.completeExceptionally(e);
+            }
+        }, "compactor-" + path.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isRewritten() {
+        return rewritten.isDone();
+    }
+
+    // Waits for the background rewrite and returns false, cleaning up, if it failed.
+    public boolean awaitRewrite() {
+        try {
+            rewritten.get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Compaction of " + path + " failed: " + e.getCause().getMessage());
+        }
+        discard();
+        return false;
+    }
+
+    private void discard() {
+        try {
+            if (tempChannel != null) {
+                tempChannel.close();
+            }
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            System.err.println("Could not remove " + temp + ": " + e.getMessage());
+        }
+        RUNNING.remove(temp.toAbsolutePath().normalize());
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getLiveRows() {
+        return liveRows;
+    }
+
+    private void rewrite() throws IOException {
+        int[] row = new int[1];
+        int[] live = new int[1];
+        // The id the next row written gets unless a run record says otherwise.
+        int[] nextId = {1};
+        tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        tempChannel.lock();
+        // Not closed, since that would close the channel and with it the lock.
+        BufferedWriter out = new BufferedWriter(Channels.newWriter(tempChannel, StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            IOException[] failure = new IOException[1];
+            new MappedTransactionReader().read(channel, 0, sourceLength, transaction -> {
+                int id = ids.applyAsInt(++row[0]);
+                Transaction current = overrides.containsKey(id) ? overrides.get(id) : transaction;
+                if (current == null || failure[0] != null) {
+                    return;
+                }
+                live[0]++;
+                if (id != nextId[0]) {
+                    rowRecords.append(TransactionJournal.rows(live[0], id));
+                }
+                nextId[0] = id + 1;
+                try {
+                    out.write(current.toCSV());
+                    out.newLine();
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        out.flush();
+        tempChannel.force(true);
+        // Rows appended after the compacted ones carry on from the ids they had.
+        int appendedId = ids.applyAsInt(rowCount + 1);
+        if (appendedId != nextId[0]) {
+            rowRecords.append(TransactionJournal.rows(live[0] + 1, appendedId));
+        }
+        liveRows = live[0];
+    }
+
+    // Must run under the file's append lock, with this process's appends to the file and journal
+    // flushed. Returns false, dropping the compaction, if the file or journal was replaced meanwhile.
+    public boolean swap() throws IOException {
+        if (!Files.exists(path) || !CSVFileHandler.fileKey(path).equals(sourceKey)
+                || !Files.exists(journalPath) || !CSVFileHandler.fileKey(journalPath).equals(journalKey)) {
+            System.err.println("Dropping compaction of " + path + ", which was replaced while it ran");
+            discard();
+            return false;
+        }
+        try {
+            commit();
+        } finally {
+            RUNNING.remove(temp.toAbsolutePath().normalize());
+        }
+        return true;
+    }
+
+    private void commit() throws IOException {
+        try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = source.size();
+            tempChannel.position(tempChannel.size());
+            for (long position = sourceLength; position < size; ) {
+                position += source.transferTo(position, size - position, tempChannel);
+            }
+            tempChannel.force(true);
+        }
+        // recover() only runs under the append lock too, so the temporary file no longer needs its own.
+        tempChannel.close();
+
+        Path journalTemp = Paths.get(journalPath + ".tmp");
+        try (FileChannel journal = FileChannel.open(journalPath, StandardOpenOption.READ);
+             BufferedReader in = new BufferedReader(Channels.newReader(journal.position(journalLength), StandardCharsets.UTF_8));
+             BufferedWriter out = Files.newBufferedWriter(journalTemp, StandardCharsets.UTF_8)) {
+            out.write(TransactionJournal.checkpoint(token));
+            out.write(rowRecords.toString());
+            String record;
+            while ((record = in.readLine()) != null) {
+                // Records against rows this compaction dropped no longer apply.
+                int id = TransactionJournal.recordId(record);
+                if (id > 0 && !(overrides.containsKey(id) && overrides.get(id) == null)) {
+                    out.write(record);
+                    out.write('\n');
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(journalTemp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(journalTemp, journalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Finishes a compaction whose journal was committed but whose file was not yet moved into place,
+    // and removes leftovers of compactions that never committed.
+    public static void recover(Path path, Path journalPath) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return;
+        }
+        long token = TransactionJournal.readCheckpoint(journalPath);
+        Path committed = tempPath(path, token);
+        if (token != 0 && Files.exists(committed)) {
+            Files.move(committed, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, path.getFileName() + ".compact.*")) {
+            for (Path leftover : leftovers) {
+                if (!RUNNING.contains(leftover.toAbsolutePath().normalize()) && !lockedElsewhere(leftover)) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
+        }
+    }
+
+    // Whether a compaction in another process still holds the lock on its temporary file.
+    private static boolean lockedElsewhere(Path temp) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private static Path tempPath(Path path, long token) {
+        return path.resolveSibling(path.getFileName() + ".compact." + token);
+    }
+}
@@ -0,0 +1,60 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+// Watches a transaction file for changes made by other processes. The watch thread only records that
+// something changed; the owner picks the change up on its own thread by calling poll().
+public class TransactionFileTailer implements Closeable {
+    private final Path fileName;
+    private final WatchService watchService;
+    private volatile boolean changed;
+
+    public TransactionFileTailer(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        this.fileName = path.getFileName();
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        Thread thread = new Thread(this::run, "tailer-" + fileName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Returns true if the file changed since the previous call.
+    public boolean poll() {
+        if (!changed) {
+            return false;
+        }
+        changed = false;
+        return true;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                if (!key.reset()) {
+                    changed = true;
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -0,0 +1,49 @@
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Per-ledger dictionaries of vendors, descriptions and types, so a loaded ledger keeps one copy of
+// each distinct value however many rows repeat it. Dates and times go through TemporalCache.
+// Safe to share between the threads of a parallel import.
+public class TransactionInterner {
+    private final Map<String, String> vendors = new ConcurrentHashMap<>();
+    private final Map<String, String> descriptions = new ConcurrentHashMap<>();
+    private final Map<String, String> types = new ConcurrentHashMap<>();
+
+    public String vendor(String vendor) {
+        return canonical(vendors, vendor);
+    }
+
+    public String description(String description) {
+        return canonical(descriptions, description);
+    }
+
+    public String type(String type) {
+        return canonical(types, type);
+    }
+
+    // Replaces the transaction's strings, date and time with the shared instances and returns it.
+    public Transaction canonicalize(Transaction transaction) {
+        transaction.setVendor(vendor(transaction.getVendor()));
+        transaction.setDescription(description(transaction.getDescription()));
+        transaction.setType(type(transaction.getType()));
+        transaction.setDate(TemporalCache.canonical((LocalDate) transaction.getDate()));
+        transaction.setTime(TemporalCache.canonical(transaction.getTime()));
+        return transaction;
+    }
+
+    public int size() {
+        return vendors.size() + descriptions.size() + types.size();
+    }
+
+    private static String canonical(Map<String, String> dictionary, String value) {
+        if (value == null) {
+            return null;
+        }
+        String existing = dictionary.get(value);
+        if (existing == null) {
+            existing = dictionary.putIfAbsent(value, value);
+        }
+        return existing != null ? existing : value;
+    }
+}
@@ -0,0 +1,227 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntUnaryOperator;
+
+// Append-only log of updates and deletes against rows of a transaction file.
+// Records are "U,<id>,<csv>" for an update and "D,<id>" for a delete. A journal written by
+// compaction starts with a "C,<token>" checkpoint naming the compacted file, followed by "R,<row>,<id>"
+// records saying that the rows from that row of the file on are numbered from that id.
+//
+// A row's id is its row number until the file is first compacted. Compaction drops rows but keeps
+// the ids of the rest, so ids handed out before it still name the same rows afterwards, and ids of
+// deleted rows are never used again.
+public class TransactionJournal implements Closeable {
+    private static final char UPDATE = 'U';
+    private static final char DELETE = 'D';
+    private static final char CHECKPOINT = 'C';
+    private static final char ROWS = 'R';
+
+    private final Path path;
+    private final Map<Integer, Transaction> overrides;
+    private final GroupCommitWriter writer;
+    private int recordCount;
+    private final RowIds rowIds = new RowIds();
+
+    public TransactionJournal(String fileName, GroupCommitWriter.FsyncPolicy policy, long intervalMillis) throws IOException {
+        this.path = Paths.get(fileName);
+        this.overrides = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // A crash mid-append can leave a partial last record; drop it so the next append starts clean.
+            channel.truncate(replay());
+        }
+        this.writer = new GroupCommitWriter(path, policy, intervalMillis);
+    }
+
+    private long replay() throws IOException {
+        long position = 0;
+        long validLength = 0;
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b != '\n') {
+                    record.write(b);
+                    continue;
+                }
+                apply(record.toString(StandardCharsets.UTF_8));
+                record.reset();
+                validLength = position;
+            }
+        }
+        return validLength;
+    }
+
+    private void apply(String record) {
+        if (!record.isEmpty() && record.charAt(0) == CHECKPOINT) {
+            return;
+        }
+        try {
+            int separator = record.indexOf(',', 2);
+            if (record.charAt(0) == ROWS) {
+                rowIds.add(Integer.parseInt(record.substring(2, separator)), Integer.parseInt(record.substring(separator + 1)));
+                return;
+            }
+            int id = Integer.parseInt(record.substring(2, separator < 0 ? record.length() : separator));
+            if (record.charAt(0) == UPDATE) {
+                Transaction transaction = Transaction.parse(record.substring(separator + 1));
+                transaction.setId(id);
+                overrides.put(id, transaction);
+            } else if (record.charAt(0) == DELETE) {
+                overrides.put(id, null);
+            } else {
+                throw new IllegalArgumentException("Unknown record type");
+            }
+            recordCount++;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            System.err.println("Skipping invalid journal record: " + record);
+        }
+    }
+
+    // The id of the row at the given 1-based row number of the file.
+    public int idOf(int row) {
+        return rowIds.applyAsInt(row);
+    }
+
+    // Maps row numbers to ids. Only replaying changes it, so it stays valid after the journal is closed.
+    public IntUnaryOperator rowIds() {
+        return rowIds;
+    }
+
+    public Transaction resolve(Transaction transaction) {
+        if (!overrides.containsKey(transaction.getId())) {
+            return transaction;
+        }
+        return overrides.get(transaction.getId());
+    }
+
+    public Map<Integer, Transaction> getOverrides() {
+        return Collections.unmodifiableMap(overrides);
+    }
+
+    public Map<Integer, Transaction> copyOverrides() {
+        return new HashMap<>(overrides);
+    }
+
+    // The action runs as soon as the record is in the journal, as for GroupCommitWriter.append().
+    public CompletableFuture<Void> appendUpdate(Transaction transaction, Runnable written) {
+        overrides.put(transaction.getId(), transaction);
+        return append(UPDATE + "," + transaction.getId() + "," + transaction.toCSV() + "\n", written);
+    }
+
+    public CompletableFuture<Void> appendDelete(int id, Runnable written) {
+        overrides.put(id, null);
+        return append(DELETE + "," + id + "\n", written);
+    }
+
+    private CompletableFuture<Void> append(String record, Runnable written) {
+        recordCount++;
+        return writer.append(record, written);
+    }
+
+    public void flush() throws IOException {
+        GroupCommitWriter.await(writer.flush());
+    }
+
+    public long size() throws IOException {
+        return Files.size(path);
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    static String checkpoint(long token) {
+        return CHECKPOINT + "," + token + "\n";
+    }
+
+    // Returns the token of the checkpoint the journal starts with, or 0 if it has none.
+    static long readCheckpoint(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String first = reader.readLine();
+            if (first == null || first.length() < 3 || first.charAt(0) != CHECKPOINT) {
+                return 0;
+            }
+            return Long.parseLong(first.substring(2));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static String rows(int row, int id) {
+        return ROWS + "," + row + "," + id + "\n";
+    }
+
+    // Returns the id an update or delete record refers to, or 0 for any other record.
+    static int recordId(String record) {
+        if (record.length() < 3 || (record.charAt(0) != UPDATE && record.charAt(0) != DELETE)) {
+            return 0;
+        }
+        int separator = record.indexOf(',', 2);
+        try {
+            return Integer.parseInt(record.substring(2, separator < 0 ? record.length() : separator));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    // The start row and first id of each run of consecutively numbered rows, in row order. Rows before
+    // the first run keep their row number as id.
+    private static final class RowIds implements IntUnaryOperator {
+        private int[] rows = new int[0];
+        private int[] ids = new int[0];
+        private int runs;
+
+        void add(int row, int id) {
+            if (row < 1 || (runs > 0 && row <= rows[runs - 1])) {
+                throw new IllegalArgumentException("Row run out of order");
+            }
+            if (runs == rows.length) {
+                rows = Arrays.copyOf(rows, Math.max(4, runs * 2));
+                ids = Arrays.copyOf(ids, rows.length);
+            }
+            rows[runs] = row;
+            ids[runs] = id;
+            runs++;
+        }
+
+        @Override
+        public int applyAsInt(int row) {
+            int low = 0;
+            int high = runs - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (rows[middle] <= row) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high < 0 ? row : ids[high] + row - rows[high];
+        }
+    }
+}
@@ -1,42 +1,190 @@
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class TransactionManager {
-    private List<Transaction> transactions;
+    private TransactionSlots transactions;
+    // Set when transactions are kept column by column; it then backs the transactions list.
+    private TransactionTable table;
+    // Set when transactions are kept off the heap; it then backs the transactions list.
+    private OffHeapTransactionStore store;
+    private final RunningTotals totals = new RunningTotals();
     private CSVFileHandler fileHandler;
+    private final String fileName;
+    private TransactionFileTailer tailer;
 
     public TransactionManager(String fileName) throws IOException {
+        this(fileName, false);
+    }
+
+    public TransactionManager(String fileName, boolean columnar) throws IOException {
+        this.fileName = fileName;
+        fileHandler = new CSVFileHandler(fileName);
+        List<Transaction> snapshot = readSnapshot();
+        if (columnar) {
+            table = snapshot != null ? new TransactionTable(snapshot) : readTable();
+            transactions = new TransactionSlots(table);
+        } else {
+            transactions = new TransactionSlots(snapshot != null ? snapshot : fileHandler.readTransactionsFromFile(fileName));
+        }
+        recount();
+    }
+
+    // Loads the file into the store, which is cleared first, and keeps working from it.
+    public TransactionManager(String fileName, OffHeapTransactionStore store) throws IOException {
+        this.fileName = fileName;
+        this.store = store;
         fileHandler = new CSVFileHandler(fileName);
-        transactions = fileHandler.readTransactionsFromFile("transactions.csv");
+        transactions = readStore();
+        recount();
+    }
+
+    private void recount() {
+        totals.clear();
+        for (Transaction transaction : transactions) {
+            totals.add(transaction.getMoney());
+        }
+    }
+
+    private TransactionTable readTable() throws IOException {
+        TransactionTable table = new TransactionTable();
+        fileHandler.readTransactionsFromFile(fileName, table::add);
+        return table;
+    }
+
+    private TransactionSlots readStore() throws IOException {
+        store.clear();
+        fileHandler.readTransactionsFromFile(fileName, store::add);
+        return new TransactionSlots(store);
+    }
+
+    // Picks up rows other processes appended to the file; called on the caller's thread so the list
+    // is never modified behind its back.
+    private void catchUp() {
+        if (tailer == null || !tailer.poll()) {
+            return;
+        }
+        try {
+            List<Transaction> appended = fileHandler.readAppendedTransactions();
+            if (appended == null && store != null) {
+                transactions = readStore();
+                recount();
+            } else if (appended == null && table != null) {
+                table = readTable();
+                transactions = new TransactionSlots(table);
+                recount();
+            } else if (appended == null) {
+                transactions = new TransactionSlots(fileHandler.readTransactionsFromFile(fileName));
+                recount();
+            } else {
+                transactions.addAll(appended);
+                for (Transaction transaction : appended) {
+                    totals.add(transaction.getMoney());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading appended transactions: " + e.getMessage());
+        }
+    }
+
+    public void startTailing() throws IOException {
+        if (tailer == null) {
+            tailer = new TransactionFileTailer(Paths.get(fileName));
+        }
+    }
+
+    public void stopTailing() throws IOException {
+        if (tailer != null) {
+            tailer.close();
+            tailer = null;
+        }
+    }
+
+    private List<Transaction> readSnapshot() {
+        try {
+            return fileHandler.readSnapshot();
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable snapshot: " + e.getMessage());
+            return null;
+        }
     }
 
     public void addTransaction(Transaction newTransaction) {
-        transactions.add(newTransaction);
         try {
-            fileHandler.writeTransactionToFile(newTransaction);
+            GroupCommitWriter.await(addTransactionAsync(newTransaction));
         } catch (IOException e) {
             System.err.println("Error writing transaction to file");
         }
     }
 
+    public CompletableFuture<Void> addTransactionAsync(Transaction newTransaction) {
+        catchUp();
+        CompletableFuture<Void> written;
+        try {
+            written = fileHandler.writeTransactionToFileAsync(newTransaction);
+        } catch (IOException e) {
+            written = CompletableFuture.failedFuture(e);
+        }
+        // Added once the handler has assigned its id, since a table copies the id when storing the row.
+        transactions.add(newTransaction);
+        totals.add(newTransaction.getMoney());
+        return written;
+    }
+
+    // Writes a batch for IngestionPipeline in one append, which assigns the rows their ids.
+    CompletableFuture<Void> writeBatch(List<Transaction> batch) throws IOException {
+        return fileHandler.writeTransactionsToFileAsync(batch);
+    }
+
+    // Adds a batch IngestionPipeline has written to the list and totals. Rows other processes appended
+    // are left for the next call made after the import to pick up.
+    void addWrittenBatch(List<Transaction> batch) {
+        transactions.addAll(batch);
+        for (Transaction transaction : batch) {
+            totals.add(transaction.getMoney());
+        }
+    }
+
     public boolean deleteTransaction(Transaction transaction) {
-        if (transactions.remove(transaction)) {
-            try {
-                fileHandler.deleteTransactionFromFile(transaction);
-            } catch (IOException e) {
-                System.err.println("Error deleting transaction from file");
-            }
+        CompletableFuture<Boolean> deleted = deleteTransactionAsync(transaction);
+        try {
+            return GroupCommitWriter.await(deleted);
+        } catch (IOException e) {
+            System.err.println("Error deleting transaction from file");
             return true;
-        } else {
-            return false;
         }
     }
 
+    // Removes the transaction from the list at once; the future completes with whether there was one
+    // once the deletion is as durable as the file handler's fsync policy promises.
+    public CompletableFuture<Boolean> deleteTransactionAsync(Transaction transaction) {
+        catchUp();
+        Transaction removed = transactions.delete(transaction);
+        if (removed == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        totals.remove(removed.getMoney());
+        try {
+            return fileHandler.deleteTransactionFromFileAsync(transaction).thenApply(written -> true);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public Transaction getTransactionById(int id) {
+        catchUp();
+        return transactions.getById(id);
+    }
+
     public List<Transaction> getAllTransactions() {
+        catchUp();
         return Collections.unmodifiableList(transactions);
     }
 
@@ -49,25 +197,35 @@ public class TransactionManager {
     }
 
     public boolean updateTransaction(Transaction oldTransaction, Transaction updatedTransaction) {
-        int index = transactions.indexOf(oldTransaction);
-        if (index >= 0) {
-            transactions.set(index, updatedTransaction);
-            try {
-                fileHandler.updateTransactionInFile(oldTransaction, updatedTransaction);
-                return true;
-            } catch (IOException e) {
-                System.err.println("Error updating transaction in file");
-            }
+        CompletableFuture<Boolean> updated = updateTransactionAsync(oldTransaction, updatedTransaction);
+        try {
+            return GroupCommitWriter.await(updated);
+        } catch (IOException e) {
+            System.err.println("Error updating transaction in file");
+            return false;
         }
-        return false;
     }
 
-    public BigDecimal getTotalAmount() {
-        BigDecimal total = BigDecimal.ZERO;
-        for (Transaction transaction : transactions) {
-            total = total.add(transaction.getAmount());
+    // Replaces the transaction in the list at once; the future completes with whether there was one
+    // once the update is as durable as the file handler's fsync policy promises.
+    public CompletableFuture<Boolean> updateTransactionAsync(Transaction oldTransaction, Transaction updatedTransaction) {
+        catchUp();
+        if (!transactions.contains(oldTransaction)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        updatedTransaction.setId(oldTransaction.getId());
+        totals.remove(transactions.replace(oldTransaction, updatedTransaction).getMoney());
+        totals.add(updatedTransaction.getMoney());
+        try {
+            return fileHandler.updateTransactionInFileAsync(oldTransaction, updatedTransaction).thenApply(written -> true);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
         }
-        return total;
+    }
+
+    public BigDecimal getTotalAmount() {
+        catchUp();
+        return totals.getBalance();
     }
 
     public BigDecimal getAverageAmount() {
@@ -76,9 +234,14 @@ public class TransactionManager {
     }
 
     public Transaction getHighestTransaction() {
+        catchUp();
+        if (table != null) {
+            transactions.compact();
+            return table.get(table.extremeRow(1));
+        }
         Transaction maxTransaction = transactions.get(0);
         for (Transaction transaction : transactions) {
-            if (transaction.getAmount().compareTo(maxTransaction.getAmount()) > 0) {
+            if (transaction.getMoney().compareTo(maxTransaction.getMoney()) > 0) {
                 maxTransaction = transaction;
             }
         }
@@ -86,9 +249,14 @@ public class TransactionManager {
     }
 
     public Transaction getLowestTransaction() {
+        catchUp();
+        if (table != null) {
+            transactions.compact();
+            return table.get(table.extremeRow(-1));
+        }
         Transaction minTransaction = transactions.get(0);
         for (Transaction transaction : transactions) {
-            if (transaction.getAmount().compareTo(minTransaction.getAmount()) < 0) {
+            if (transaction.getMoney().compareTo(minTransaction.getMoney()) < 0) {
                 minTransaction = transaction;
             }
         }
@@ -96,19 +264,16 @@ public class TransactionManager {
     }
 
     public List<Transaction> sortByDate() throws IOException {
-        List<Transaction> result = fileHandler.readTransactionsFromFile("transactions.csv");
+        catchUp();
+        List<Transaction> result = new ArrayList<>(transactions);
         Collections.sort(result);
         return result;
     }
 
     public List<Transaction> sortByAmount() {
-        List<Transaction> result = null;
-        try {
-            result = fileHandler.readTransactionsFromFile("transactions.csv");
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        result.sort((t1, t2) -> t1.getAmount().compareTo(t2.getAmount()));
+        catchUp();
+        List<Transaction> result = new ArrayList<>(transactions);
+        result.sort((t1, t2) -> t1.getMoney().compareTo(t2.getMoney()));
         return result;
     }
 
@@ -116,19 +281,40 @@ public class TransactionManager {
         return fileHandler.searchTransactionsByDate(startDate, endDate);
     }
 
+    public BigDecimal getMonthTotal(YearMonth month) throws IOException {
+        return fileHandler.getMonthTotal(month);
+    }
+
     public boolean deleteTransaction(int index) {
+        catchUp();
         if (index < 0 || index >= transactions.size()) {
             return false;
         }
-        Transaction transactionToRemove = transactions.get(index);
-        if (transactions.remove(transactionToRemove)) {
-            try {
-                fileHandler.deleteTransactionFromFile(transactionToRemove);
-                return true;
-            } catch (IOException e) {
-                System.err.println("Error deleting transaction from file");
-            }
+        Transaction transactionToRemove = transactions.remove(index);
+        totals.remove(transactionToRemove.getMoney());
+        try {
+            fileHandler.deleteTransactionFromFile(transactionToRemove);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error deleting transaction from file");
         }
         return false;
     }
+
+    public void saveSnapshot() throws IOException {
+        if (store != null) {
+            // A snapshot is built on the heap, which an off-heap ledger is meant to stay out of.
+            return;
+        }
+        fileHandler.writeSnapshot(transactions);
+    }
+
+    public void close() throws IOException {
+        stopTailing();
+        try {
+            saveSnapshot();
+        } finally {
+            fileHandler.close();
+        }
+    }
 }
\ No newline at end of file
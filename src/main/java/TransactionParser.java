@@ -0,0 +1,120 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Single-pass parser for "amount,yyyy-MM-dd,HH:mm[:ss[.fraction]],description,vendor" rows.
+// Every method reports bad input by returning null instead of throwing.
+public class TransactionParser {
+    private static final int FIELD_COUNT = 5;
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    public static Transaction parse(String line) {
+        return parse(line, null);
+    }
+
+    // Takes vendor and description from the interner's dictionaries when one is given.
+    public static Transaction parse(String line, TransactionInterner interner) {
+        int[] commas = new int[FIELD_COUNT - 1];
+        int found = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == ',') {
+                if (found == commas.length) {
+                    return null;
+                }
+                commas[found++] = i;
+            }
+        }
+        if (found != commas.length) {
+            return null;
+        }
+        Money amount = parseAmount(line, 0, commas[0]);
+        LocalDate date = parseDate(line, commas[0] + 1, commas[1]);
+        LocalTime time = parseTime(line, commas[1] + 1, commas[2]);
+        if (amount == null || date == null || time == null) {
+            return null;
+        }
+        String description = line.substring(commas[2] + 1, commas[3]);
+        String vendor = line.substring(commas[3] + 1);
+        if (interner != null) {
+            description = interner.description(description);
+            vendor = interner.vendor(vendor);
+        }
+        return new Transaction(amount, date, time, description, vendor);
+    }
+
+    public static Money parseAmount(CharSequence text, int start, int end) {
+        return Money.parse(text, start, end);
+    }
+
+    public static LocalDate parseDate(CharSequence text, int start, int end) {
+        if (end - start != 10 || text.charAt(start + 4) != '-' || text.charAt(start + 7) != '-') {
+            return null;
+        }
+        return date(digits(text, start, 4), digits(text, start + 5, 2), digits(text, start + 8, 2));
+    }
+
+    public static LocalTime parseTime(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length < 5 || text.charAt(start + 2) != ':') {
+            return null;
+        }
+        int hour = digits(text, start, 2);
+        int minute = digits(text, start + 3, 2);
+        int second = 0;
+        int nano = 0;
+        if (length > 5) {
+            if (length < 8 || text.charAt(start + 5) != ':') {
+                return null;
+            }
+            second = digits(text, start + 6, 2);
+            if (length > 8) {
+                int fraction = length - 9;
+                if (text.charAt(start + 8) != '.' || fraction < 1 || fraction > 9) {
+                    return null;
+                }
+                nano = fraction(digits(text, start + 9, fraction), fraction);
+            }
+        }
+        return time(hour, minute, second, nano);
+    }
+
+    static LocalDate date(int year, int month, int day) {
+        if (year < 0 || month < 1 || month > 12 || day < 1) {
+            return null;
+        }
+        int length = month == 2 && isLeapYear(year) ? 29 : DAYS_IN_MONTH[month - 1];
+        return day > length ? null : TemporalCache.date(year, month, day);
+    }
+
+    static LocalTime time(int hour, int minute, int second, int nano) {
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || nano < 0) {
+            return null;
+        }
+        return TemporalCache.time(hour, minute, second, nano);
+    }
+
+    static int fraction(int value, int digits) {
+        if (value < 0) {
+            return -1;
+        }
+        for (int i = digits; i < 9; i++) {
+            value *= 10;
+        }
+        return value;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,17 @@
+import java.util.BitSet;
+import java.util.List;
+
+// Storage that keeps transactions in its own row format and builds a Transaction on each get(), so
+// changes to a returned transaction are not seen until it is stored again with set(), and rows are
+// matched by id rather than by identity.
+public interface TransactionRows extends List<Transaction> {
+    int getId(int row);
+
+    void setId(int row, int id);
+
+    // Returns the first row with the id, or -1 if there is none.
+    int findRow(int id);
+
+    // Removes every row whose bit is set in a single pass, keeping the rest in order.
+    void removeRows(BitSet rows);
+}
@@ -0,0 +1,316 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A local HTTP API over a TransactionManager. Every request runs on its own virtual thread, so
+// thousands of clients can wait on the network at once without tying up platform threads.
+//
+//   GET    /transactions?from=2023-01-01&to=2023-12-31   transactions in a date range
+//   GET    /transactions?vendor=Amazon                    transactions with a vendor
+//   GET    /transactions                                  every transaction
+//   POST   /transactions                                  add one; form fields amount, date, time, description, vendor
+//   PUT    /transactions/<id>                             replace one, with the same fields
+//   DELETE /transactions/<id>                             delete one
+//   GET    /balance                                       total of all transactions
+//
+// Lists are streamed back as CSV rows, or as JSON lines with format=json or an Accept header of
+// application/x-ndjson, in chunks as they are written rather than built up in memory first.
+public class TransactionServer {
+    private static final int DEFAULT_PORT = 8080;
+    // Connections the OS queues while every accepted one is still being read.
+    private static final int BACKLOG = 4096;
+    private static final String JSON_LINES = "application/x-ndjson";
+
+    private final TransactionManager manager;
+    // TransactionManager is not thread-safe. A ReentrantLock rather than synchronized, since a
+    // virtual thread blocked in synchronized keeps its carrier thread. Changes are made under it but
+    // waited for after it is released, so requests share fsyncs instead of queueing behind each one.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public TransactionServer(TransactionManager manager, InetSocketAddress address) throws IOException {
+        this.manager = manager;
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/transactions", this::handleTransactions);
+        server.createContext("/balance", this::handleBalance);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    // Waits up to the given number of seconds for requests in progress to finish.
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.close();
+    }
+
+    private void handleTransactions(HttpExchange exchange) {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String idPart = path.length() > "/transactions/".length() ? path.substring("/transactions/".length()) : null;
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> query(exchange);
+                case "POST" -> add(exchange);
+                case "PUT" -> update(exchange, idPart);
+                case "DELETE" -> delete(exchange, idPart);
+                default -> send(exchange, 405, "Method not allowed");
+            }
+            exchange.close();
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            respondWithError(exchange, 400, e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error handling request: " + e.getMessage());
+            exchange.close();
+        }
+    }
+
+    private static void respondWithError(HttpExchange exchange, int status, String message) {
+        try (exchange) {
+            send(exchange, status, message);
+        } catch (IOException e) {
+            System.err.println("Error sending response: " + e.getMessage());
+        }
+    }
+
+    private void handleBalance(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, 405, "Method not allowed");
+                return;
+            }
+            lock.lock();
+            String balance;
+            try {
+                balance = manager.getTotalAmount().toPlainString();
+            } finally {
+                lock.unlock();
+            }
+            send(exchange, 200, balance);
+        }
+    }
+
+    private void query(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseForm(exchange.getRequestURI().getRawQuery());
+        String vendor = params.get("vendor");
+        String from = params.get("from");
+        String to = params.get("to");
+        List<Transaction> transactions;
+        lock.lock();
+        try {
+            if (vendor != null) {
+                transactions = manager.getTransactionsWithVendor(vendor);
+            } else if (from != null || to != null) {
+                transactions = manager.searchTransactionsByDate(from != null ? LocalDate.parse(from) : LocalDate.MIN,
+                        to != null ? LocalDate.parse(to) : LocalDate.MAX);
+            } else {
+                // A copy, so rows can be streamed out without holding the lock.
+                transactions = List.copyOf(manager.getAllTransactions());
+            }
+        } finally {
+            lock.unlock();
+        }
+        boolean json = "json".equals(params.get("format"))
+                || JSON_LINES.equals(exchange.getRequestHeaders().getFirst("Accept"));
+        exchange.getResponseHeaders().set("Content-Type", json ? JSON_LINES : "text/csv; charset=utf-8");
+        // A length of 0 sends the body chunked, as it is written.
+        exchange.sendResponseHeaders(200, 0);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+        for (Transaction transaction : transactions) {
+            if (json) {
+                writeJson(writer, transaction);
+            } else {
+                writer.write(transaction.toCSV());
+            }
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    private void add(HttpExchange exchange) throws IOException {
+        Transaction transaction = readTransaction(exchange);
+        CompletableFuture<Void> added;
+        int id;
+        lock.lock();
+        try {
+            added = manager.addTransactionAsync(transaction);
+            id = transaction.getId();
+        } finally {
+            lock.unlock();
+        }
+        if (written(exchange, added)) {
+            send(exchange, 201, String.valueOf(id));
+        }
+    }
+
+    private void update(HttpExchange exchange, String idPart) throws IOException {
+        int id = parseId(idPart);
+        Transaction transaction = readTransaction(exchange);
+        CompletableFuture<Boolean> update = CompletableFuture.completedFuture(false);
+        lock.lock();
+        try {
+            Transaction existing = manager.getTransactionById(id);
+            if (existing != null) {
+                update = manager.updateTransactionAsync(existing, transaction);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (written(exchange, update)) {
+            boolean updated = update.join();
+            send(exchange, updated ? 200 : 404, updated ? String.valueOf(id) : "No transaction with id " + id);
+        }
+    }
+
+    private void delete(HttpExchange exchange, String idPart) throws IOException {
+        int id = parseId(idPart);
+        CompletableFuture<Boolean> delete = CompletableFuture.completedFuture(false);
+        lock.lock();
+        try {
+            Transaction existing = manager.getTransactionById(id);
+            if (existing != null) {
+                delete = manager.deleteTransactionAsync(existing);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (written(exchange, delete)) {
+            boolean deleted = delete.join();
+            send(exchange, deleted ? 200 : 404, deleted ? String.valueOf(id) : "No transaction with id " + id);
+        }
+    }
+
+    // Waits for a change made under the lock to be written, and answers with an error if it was not.
+    private static boolean written(HttpExchange exchange, CompletableFuture<?> change) throws IOException {
+        try {
+            GroupCommitWriter.await(change);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing transaction: " + e.getMessage());
+            send(exchange, 500, "Error writing transaction");
+            return false;
+        }
+    }
+
+    private static int parseId(String idPart) {
+        if (idPart == null) {
+            throw new IllegalArgumentException("Missing transaction id");
+        }
+        try {
+            return Integer.parseInt(idPart);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid transaction id: " + idPart);
+        }
+    }
+
+    private static Transaction readTransaction(HttpExchange exchange) throws IOException {
+        Map<String, String> fields;
+        try (InputStream body = exchange.getRequestBody()) {
+            fields = parseForm(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        try {
+            return new Transaction(fields.getOrDefault("amount", ""), fields.getOrDefault("date", ""),
+                    fields.getOrDefault("time", ""), fields.getOrDefault("description", ""),
+                    fields.getOrDefault("vendor", ""));
+        } catch (Transaction.InvalidInputException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    private static Map<String, String> parseForm(String form) {
+        Map<String, String> fields = new HashMap<>();
+        if (form == null || form.isEmpty()) {
+            return fields;
+        }
+        for (String pair : form.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            fields.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return fields;
+    }
+
+    private static void writeJson(Writer writer, Transaction transaction) throws IOException {
+        writer.write("{\"id\":");
+        writer.write(String.valueOf(transaction.getId()));
+        writer.write(",\"amount\":");
+        writer.write(transaction.getAmount().toPlainString());
+        writer.write(",\"date\":\"");
+        writer.write(transaction.getDate().toString());
+        writer.write("\",\"time\":\"");
+        writer.write(transaction.getTime().format(DateTimeFormatter.ISO_TIME));
+        writer.write("\",\"description\":");
+        writeJsonString(writer, transaction.getDescription());
+        writer.write(",\"vendor\":");
+        writeJsonString(writer, transaction.getVendor());
+        writer.write('}');
+    }
+
+    private static void writeJsonString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    // Serves the given file on the loopback interface only, so just local clients can reach it.
+    public static void main(String[] args) throws IOException {
+        String fileName = args.length > 0 ? args[0] : "transactions.csv";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        TransactionManager manager = new TransactionManager(fileName);
+        TransactionServer server = new TransactionServer(manager, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            try {
+                manager.close();
+            } catch (IOException e) {
+                System.err.println("Error closing transaction file: " + e.getMessage());
+            }
+        }));
+        server.start();
+        System.out.println("Serving " + fileName + " on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+}
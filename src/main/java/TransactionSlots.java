@@ -0,0 +1,334 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+
+// A list of transactions with an id index over the slots of a backing list, so lookup, replacement
+// and removal by id take constant time. Removal only marks the slot deleted; the backing list is
+// compacted once deleted slots make up half of it. Until then positions are found by counting the
+// deleted slots before them in a Fenwick tree, so get(), set() and remove() by position take log
+// time rather than a compaction each.
+// Over TransactionRows storage rows match by id, as in the storage itself; over any other list they
+// match by identity, like ArrayList.remove(Object) on a Transaction, through a second index keyed by
+// identity hash code. A transaction whose id is changed after it was added is still found that way,
+// and getById() rebuilds the id index once it meets an entry left stale by such a change. When keys
+// collide, lookups fall back to a scan. An OffHeapTransactionStore can hold more rows than a heap
+// index should, so over one the store finds rows by id itself, and ids are assumed unique.
+public final class TransactionSlots extends AbstractList<Transaction> implements RandomAccess {
+    private final List<Transaction> rows;
+    private final boolean matchById;
+    private final IdSlotMap slotsById;
+    private final IdSlotMap slotsByIdentity;
+    private final BitSet deleted = new BitSet();
+    private int deletedCount;
+    // Fenwick tree of deleted slots, indexed from 1; its length less one is a power of two.
+    private int[] deletedTree = new int[1];
+    // Number of keys found already mapped when mapping a slot; only then can a lookup miss need a scan.
+    private int collisions;
+    private int identityCollisions;
+
+    public TransactionSlots(List<Transaction> rows) {
+        this.rows = rows;
+        this.matchById = rows instanceof TransactionRows;
+        this.slotsById = rows instanceof OffHeapTransactionStore ? null : new IdSlotMap(rows.size());
+        this.slotsByIdentity = matchById ? null : new IdSlotMap(rows.size());
+        reindex();
+    }
+
+    @Override
+    public int size() {
+        return rows.size() - deletedCount;
+    }
+
+    @Override
+    public Transaction get(int index) {
+        return rows.get(slotAt(index));
+    }
+
+    @Override
+    public Transaction set(int index, Transaction transaction) {
+        int slot = slotAt(index);
+        Transaction previous = rows.get(slot);
+        unmap(slot);
+        rows.set(slot, transaction);
+        map(slot);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Transaction transaction) {
+        if (index != size()) {
+            compact();
+            rows.add(index, transaction);
+            reindex();
+        } else {
+            rows.add(transaction);
+            map(rows.size() - 1);
+        }
+        modCount++;
+    }
+
+    @Override
+    public Transaction remove(int index) {
+        int slot = slotAt(index);
+        Transaction removed = rows.get(slot);
+        delete(slot);
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Transaction && delete((Transaction) o) != null;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Transaction)) {
+            return -1;
+        }
+        int slot = slotOf((Transaction) o);
+        return slot < 0 ? -1 : slot - deletedBefore(slot);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Transaction && slotOf((Transaction) o) >= 0;
+    }
+
+    @Override
+    public void clear() {
+        rows.clear();
+        if (slotsById != null) {
+            slotsById.clear();
+        }
+        if (slotsByIdentity != null) {
+            slotsByIdentity.clear();
+        }
+        deleted.clear();
+        deletedCount = 0;
+        Arrays.fill(deletedTree, 0);
+        collisions = 0;
+        identityCollisions = 0;
+        modCount++;
+    }
+
+    public Transaction getById(int id) {
+        if (slotsById == null) {
+            int row = liveRow(id);
+            return row < 0 ? null : rows.get(row);
+        }
+        int slot = slotsById.get(id);
+        if (slot != IdSlotMap.MISSING && (deleted.get(slot) || idAt(slot) != id)) {
+            // The id of a stored transaction was changed after it was added.
+            reindex();
+            slot = slotsById.get(id);
+        }
+        return slot < 0 ? null : rows.get(slot);
+    }
+
+    // Visits the backing row of each transaction still present, in order, without compacting first.
+    public void forEachLive(IntConsumer action) {
+        for (int slot = deleted.nextClearBit(0); slot < rows.size(); slot = deleted.nextClearBit(slot + 1)) {
+            action.accept(slot);
+        }
+    }
+
+    // Removes the matching transaction and returns the one that was stored, or null if there is none.
+    public Transaction delete(Transaction transaction) {
+        int slot = slotOf(transaction);
+        if (slot < 0) {
+            return null;
+        }
+        Transaction removed = rows.get(slot);
+        delete(slot);
+        return removed;
+    }
+
+    // Stores the replacement in the matching transaction's slot and returns the one it replaced, or
+    // null if there is none.
+    public Transaction replace(Transaction transaction, Transaction replacement) {
+        int slot = slotOf(transaction);
+        if (slot < 0) {
+            return null;
+        }
+        Transaction previous = rows.get(slot);
+        unmap(slot);
+        rows.set(slot, replacement);
+        map(slot);
+        return previous;
+    }
+
+    // Drops deleted slots from the backing list and rebuilds the index over the slots left.
+    public void compact() {
+        if (deletedCount == 0) {
+            return;
+        }
+        if (rows instanceof TransactionRows) {
+            ((TransactionRows) rows).removeRows(deleted);
+        } else {
+            int kept = 0;
+            for (int slot = 0; slot < rows.size(); slot++) {
+                if (!deleted.get(slot)) {
+                    rows.set(kept++, rows.get(slot));
+                }
+            }
+            rows.subList(kept, rows.size()).clear();
+        }
+        deleted.clear();
+        deletedCount = 0;
+        Arrays.fill(deletedTree, 0);
+        reindex();
+    }
+
+    // Rebuilds the indexes over the slots left after compacting.
+    public void reindex() {
+        compact();
+        if (slotsById == null) {
+            return;
+        }
+        slotsById.clear();
+        collisions = 0;
+        if (slotsByIdentity != null) {
+            slotsByIdentity.clear();
+            identityCollisions = 0;
+        }
+        for (int slot = 0; slot < rows.size(); slot++) {
+            map(slot);
+        }
+    }
+
+    private void delete(int slot) {
+        unmap(slot);
+        deleted.set(slot);
+        deletedCount++;
+        markDeleted(slot);
+        modCount++;
+        if (deletedCount * 2 > rows.size()) {
+            compact();
+        }
+    }
+
+    // Returns the slot holding the transaction at the position, which is the position'th slot not deleted.
+    private int slotAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (deletedCount == 0) {
+            return index;
+        }
+        // Slots past the end of the tree have none deleted, so a search that runs off it counts on.
+        int slot = 0;
+        int remaining = index + 1;
+        for (int step = Integer.highestOneBit(deletedTree.length - 1); step > 0; step >>= 1) {
+            int next = slot + step;
+            if (next < deletedTree.length && step - deletedTree[next] < remaining) {
+                remaining -= step - deletedTree[next];
+                slot = next;
+            }
+        }
+        return slot + remaining - 1;
+    }
+
+    // Number of deleted slots before the slot.
+    private int deletedBefore(int slot) {
+        int count = 0;
+        for (int i = Math.min(slot, deletedTree.length - 1); i > 0; i -= i & -i) {
+            count += deletedTree[i];
+        }
+        return count;
+    }
+
+    private void markDeleted(int slot) {
+        if (slot + 1 >= deletedTree.length) {
+            // Grown by rebuilding it from the deleted slots, doubling so that happens rarely.
+            deletedTree = new int[Integer.highestOneBit(Math.max(rows.size(), slot + 1)) * 2 + 1];
+            for (int other = deleted.nextSetBit(0); other >= 0; other = deleted.nextSetBit(other + 1)) {
+                if (other != slot) {
+                    addDeleted(other);
+                }
+            }
+        }
+        addDeleted(slot);
+    }
+
+    private void addDeleted(int slot) {
+        for (int i = slot + 1; i < deletedTree.length; i += i & -i) {
+            deletedTree[i]++;
+        }
+    }
+
+    private void map(int slot) {
+        if (slotsById != null && slotsById.putIfAbsent(idAt(slot), slot) != slot) {
+            collisions++;
+        }
+        if (slotsByIdentity != null && slotsByIdentity.putIfAbsent(identityAt(slot), slot) != slot) {
+            identityCollisions++;
+        }
+    }
+
+    private void unmap(int slot) {
+        if (slotsById != null) {
+            unmap(slotsById, idAt(slot), slot, collisions, this::idAt);
+        }
+        if (slotsByIdentity != null) {
+            unmap(slotsByIdentity, identityAt(slot), slot, identityCollisions, this::identityAt);
+        }
+    }
+
+    // An id changed since it was mapped leaves the old entry behind, for getById() to find stale.
+    private void unmap(IdSlotMap slots, int key, int slot, int collided, IntUnaryOperator keyAt) {
+        if (slots.get(key) != slot) {
+            return;
+        }
+        slots.remove(key);
+        if (collided == 0) {
+            return;
+        }
+        // Another slot may have the same key; keep it reachable.
+        for (int other = 0; other < rows.size(); other++) {
+            if (other != slot && !deleted.get(other) && keyAt.applyAsInt(other) == key) {
+                slots.putIfAbsent(key, other);
+                return;
+            }
+        }
+    }
+
+    private int slotOf(Transaction transaction) {
+        if (slotsById == null) {
+            return liveRow(transaction.getId());
+        }
+        if (matchById) {
+            int slot = slotsById.get(transaction.getId());
+            return slot == IdSlotMap.MISSING ? -1 : slot;
+        }
+        int slot = slotsByIdentity.get(System.identityHashCode(transaction));
+        if (slot != IdSlotMap.MISSING && rows.get(slot) == transaction) {
+            return slot;
+        }
+        if (identityCollisions == 0) {
+            return -1;
+        }
+        for (slot = 0; slot < rows.size(); slot++) {
+            if (!deleted.get(slot) && rows.get(slot) == transaction) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int liveRow(int id) {
+        int row = ((TransactionRows) rows).findRow(id);
+        return row < 0 || deleted.get(row) ? -1 : row;
+    }
+
+    private int idAt(int slot) {
+        return matchById ? ((TransactionRows) rows).getId(slot) : rows.get(slot).getId();
+    }
+
+    private int identityAt(int slot) {
+        return System.identityHashCode(rows.get(slot));
+    }
+}
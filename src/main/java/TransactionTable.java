@@ -0,0 +1,308 @@
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+// Transactions stored column by column in primitive arrays, with strings dictionary-encoded.
+// get() builds a Transaction from the columns on demand, so changes made to a returned transaction
+// are not seen by the table unless it is stored again with set(). Because of that, indexOf(),
+// contains() and remove(Object) match rows by id rather than by identity.
+public final class TransactionTable extends AbstractList<Transaction> implements TransactionRows, RandomAccess {
+    private static final int DEFAULT_CAPACITY = 16;
+    // Marks an amount too wide for the long column; the column then holds its index in wideAmounts.
+    private static final byte WIDE = Byte.MIN_VALUE;
+
+    private int size;
+    private int[] ids;
+    private long[] amounts;
+    private byte[] scales;
+    private int[] epochDays;
+    private int[] secondsOfDay;
+    private int[] nanos;
+    private int[] descriptions;
+    private int[] vendors;
+    private int[] types;
+    private final List<Money> wideAmounts = new ArrayList<>();
+    // Id 0 stands for null.
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+
+    public TransactionTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TransactionTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+        ids = new int[capacity];
+        amounts = new long[capacity];
+        scales = new byte[capacity];
+        epochDays = new int[capacity];
+        secondsOfDay = new int[capacity];
+        nanos = new int[capacity];
+        descriptions = new int[capacity];
+        vendors = new int[capacity];
+        types = new int[capacity];
+        strings.add(null);
+    }
+
+    public TransactionTable(Collection<Transaction> transactions) {
+        this(transactions.size());
+        addAll(transactions);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Transaction get(int row) {
+        checkRow(row);
+        Transaction transaction = Transaction.restore(ids[row], getMoney(row), getDate(row), getTime(row),
+                strings.get(descriptions[row]), strings.get(vendors[row]));
+        transaction.setType(strings.get(types[row]));
+        return transaction;
+    }
+
+    @Override
+    public Transaction set(int row, Transaction transaction) {
+        Transaction previous = get(row);
+        store(row, transaction);
+        return previous;
+    }
+
+    @Override
+    public void add(int row, Transaction transaction) {
+        if (row < 0 || row > size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + size);
+        }
+        if (size == ids.length) {
+            grow();
+        }
+        if (row < size) {
+            shift(row, row + 1, size - row);
+        }
+        size++;
+        store(row, transaction);
+        modCount++;
+    }
+
+    @Override
+    public Transaction remove(int row) {
+        Transaction previous = get(row);
+        shift(row + 1, row, size - row - 1);
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int row = indexOf(o);
+        if (row < 0) {
+            return false;
+        }
+        remove(row);
+        return true;
+    }
+
+    @Override
+    public void removeRows(BitSet rows) {
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            if (!rows.get(row)) {
+                if (kept != row) {
+                    shift(row, kept, 1);
+                }
+                kept++;
+            }
+        }
+        size = kept;
+        modCount++;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return o instanceof Transaction ? findRow(((Transaction) o).getId()) : -1;
+    }
+
+    @Override
+    public int findRow(int id) {
+        for (int row = 0; row < size; row++) {
+            if (ids[row] == id) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        if (o instanceof Transaction) {
+            int id = ((Transaction) o).getId();
+            for (int row = size - 1; row >= 0; row--) {
+                if (ids[row] == id) {
+                    return row;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int getId(int row) {
+        checkRow(row);
+        return ids[row];
+    }
+
+    @Override
+    public void setId(int row, int id) {
+        checkRow(row);
+        ids[row] = id;
+    }
+
+    public BigDecimal getAmount(int row) {
+        return getMoney(row).toBigDecimal();
+    }
+
+    public Money getMoney(int row) {
+        checkRow(row);
+        return scales[row] == WIDE ? wideAmounts.get((int) amounts[row]) : Money.of(amounts[row], scales[row]);
+    }
+
+    public LocalDate getDate(int row) {
+        checkRow(row);
+        return TemporalCache.ofEpochDay(epochDays[row]);
+    }
+
+    public LocalTime getTime(int row) {
+        checkRow(row);
+        return TemporalCache.ofNanoOfDay(secondsOfDay[row] * 1_000_000_000L + nanos[row]);
+    }
+
+    public String getVendor(int row) {
+        checkRow(row);
+        return strings.get(vendors[row]);
+    }
+
+    // Sums the amount column in a long, only falling back to BigDecimal if the total outgrows it.
+    public BigDecimal sum() {
+        MoneySum total = new MoneySum();
+        for (int row = 0; row < size; row++) {
+            if (scales[row] == WIDE) {
+                total.add(wideAmounts.get((int) amounts[row]));
+            } else {
+                total.add(amounts[row], scales[row]);
+            }
+        }
+        return total.toBigDecimal();
+    }
+
+    // Returns the row with the highest (sign 1) or lowest (sign -1) amount, or -1 if the table is empty.
+    public int extremeRow(int sign) {
+        int best = -1;
+        for (int row = 0; row < size; row++) {
+            if (best < 0 || compareAmounts(row, best) * sign > 0) {
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    public List<Transaction> getTransactionsBetween(LocalDate startDate, LocalDate endDate) {
+        long start = startDate.toEpochDay();
+        long end = endDate.toEpochDay();
+        List<Transaction> result = new ArrayList<>();
+        for (int row = 0; row < size; row++) {
+            if (epochDays[row] >= start && epochDays[row] <= end) {
+                result.add(get(row));
+            }
+        }
+        return result;
+    }
+
+    private int compareAmounts(int row, int other) {
+        if (scales[row] != WIDE && scales[other] != WIDE) {
+            return Money.compare(amounts[row], scales[row], amounts[other], scales[other]);
+        }
+        return getMoney(row).compareTo(getMoney(other));
+    }
+
+    private void store(int row, Transaction transaction) {
+        Money amount = transaction.getMoney();
+        if (!amount.isCompact()) {
+            amounts[row] = wideAmounts.size();
+            scales[row] = WIDE;
+            wideAmounts.add(amount);
+        } else {
+            amounts[row] = amount.getUnits();
+            scales[row] = (byte) amount.getScale();
+        }
+        LocalTime time = transaction.getTime();
+        ids[row] = transaction.getId();
+        epochDays[row] = (int) ((LocalDate) transaction.getDate()).toEpochDay();
+        secondsOfDay[row] = time.toSecondOfDay();
+        nanos[row] = time.getNano();
+        descriptions[row] = encode(transaction.getDescription());
+        vendors[row] = encode(transaction.getVendor());
+        types[row] = encode(transaction.getType());
+    }
+
+    private int encode(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            stringIds.put(value, id);
+            strings.add(value);
+        }
+        return id;
+    }
+
+    private void shift(int from, int to, int length) {
+        System.arraycopy(ids, from, ids, to, length);
+        System.arraycopy(amounts, from, amounts, to, length);
+        System.arraycopy(scales, from, scales, to, length);
+        System.arraycopy(epochDays, from, epochDays, to, length);
+        System.arraycopy(secondsOfDay, from, secondsOfDay, to, length);
+        System.arraycopy(nanos, from, nanos, to, length);
+        System.arraycopy(descriptions, from, descriptions, to, length);
+        System.arraycopy(vendors, from, vendors, to, length);
+        System.arraycopy(types, from, types, to, length);
+    }
+
+    private void grow() {
+        int capacity = ids.length + (ids.length >> 1) + 1;
+        ids = Arrays.copyOf(ids, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        scales = Arrays.copyOf(scales, capacity);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        secondsOfDay = Arrays.copyOf(secondsOfDay, capacity);
+        nanos = Arrays.copyOf(nanos, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+        vendors = Arrays.copyOf(vendors, capacity);
+        types = Arrays.copyOf(types, capacity);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + size);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+import java.math.BigDecimal;
+
+// A request to move an amount from one customer's account to another's, for Bank.transferAll().
+public class Transfer {
+    private final int fromCustomerId;
+    private final int toCustomerId;
+    private final BigDecimal amount;
+    private final String description;
+
+    public Transfer(int fromCustomerId, int toCustomerId, BigDecimal amount, String description) {
+        this.fromCustomerId = fromCustomerId;
+        this.toCustomerId = toCustomerId;
+        this.amount = amount;
+        this.description = description;
+    }
+
+    public int getFromCustomerId() {
+        return fromCustomerId;
+    }
+
+    public int getToCustomerId() {
+        return toCustomerId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
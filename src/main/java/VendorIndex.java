@@ -0,0 +1,263 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// On-disk index from normalized vendor name to the id and byte offset of every row with that vendor,
+// so a vendor lookup reads only the matching rows of the transaction file.
+//
+// The file is a fixed header followed by append-only entries of (key, id, offset). The header records
+// which file and how much of it the entries cover, and is rewritten after each batch of entries; on
+// open, anything past the length it records is cut off. The index catches up from the unread tail of
+// the transaction file before each lookup, and is rebuilt when the file is replaced (e.g. by compaction).
+public class VendorIndex {
+    private static final int MAGIC = 0x56494458;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 36;
+
+    private final Path source;
+    private final Path path;
+    private final Map<String, Postings> postings = new HashMap<>();
+    private long sourceKey;
+    private long sourceLength;
+    private int rowCount;
+    private long entriesEnd = HEADER_SIZE;
+
+    public VendorIndex(Path source, Path path) throws IOException {
+        this.source = source;
+        this.path = path;
+        if (!load()) {
+            clear();
+        }
+    }
+
+    // Indexes rows written to the source file since the last call, rebuilding if it was replaced.
+    public void catchUp(TransactionJournal journal) throws IOException {
+        if (!Files.exists(source)) {
+            if (sourceLength > 0) {
+                clear();
+            }
+            return;
+        }
+        long key = hash(CSVFileHandler.fileKey(source));
+        if (key != sourceKey || Files.size(source) < sourceLength) {
+            clear();
+            sourceKey = key;
+        }
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long end = MappedTransactionReader.lastLineEnd(channel, sourceLength, channel.size());
+            if (end <= sourceLength) {
+                return;
+            }
+            ByteBuffer entries = ByteBuffer.allocate(64 * 1024);
+            try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                out.position(entriesEnd);
+                long position = sourceLength;
+                ByteBuffer line = ByteBuffer.allocate(8192);
+                while (position < end) {
+                    line.clear();
+                    int read = channel.read(line, position);
+                    int lineStart = 0;
+                    for (int i = 0; i < read && position + i < end; i++) {
+                        if (line.get(i) != '\n') {
+                            continue;
+                        }
+                        String vendor = vendorOf(line, lineStart, i);
+                        if (vendor != null) {
+                            entries = add(out, entries, VendorLookup.normalize(vendor),
+                                    journal.idOf(++rowCount), position + lineStart);
+                        }
+                        lineStart = i + 1;
+                    }
+                    if (lineStart == 0) {
+                        line = ByteBuffer.allocate(line.capacity() * 2);
+                        continue;
+                    }
+                    position += lineStart;
+                }
+                entries.flip();
+                while (entries.hasRemaining()) {
+                    out.write(entries);
+                }
+                entriesEnd = out.position();
+                out.force(false);
+                sourceLength = end;
+                writeHeader(out);
+            }
+        }
+    }
+
+    public List<Transaction> search(String vendor, TransactionJournal journal) throws IOException {
+        List<Transaction> result = new ArrayList<>();
+        Map<Integer, Transaction> overrides = journal.getOverrides();
+        String key = VendorLookup.normalize(vendor);
+        Postings matches = postings.get(key);
+        if (matches != null) {
+            try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                ByteBuffer line = ByteBuffer.allocate(256);
+                for (int i = 0; i < matches.size; i++) {
+                    if (overrides.containsKey(matches.ids[i])) {
+                        continue;
+                    }
+                    line = readLine(channel, matches.offsets[i], line);
+                    Transaction transaction = TransactionParser.parse(StandardCharsets.UTF_8.decode(line).toString());
+                    if (transaction != null && VendorLookup.normalize(transaction.getVendor()).equals(key)) {
+                        transaction.setId(matches.ids[i]);
+                        result.add(transaction);
+                    }
+                }
+            }
+        }
+        for (Transaction updated : overrides.values()) {
+            if (updated != null && VendorLookup.normalize(updated.getVendor()).equals(key)) {
+                result.add(updated);
+            }
+        }
+        result.sort(Comparator.comparingInt(Transaction::getId));
+        return result;
+    }
+
+    // Returns the vendor field of the line in [start, end), or null if the line is not a valid row.
+    private static String vendorOf(ByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        Transaction transaction = TransactionParser.parse(new String(bytes, StandardCharsets.UTF_8));
+        return transaction != null ? transaction.getVendor() : null;
+    }
+
+    // Reads the line starting at offset into the buffer, growing it as needed, and returns it flipped.
+    private static ByteBuffer readLine(FileChannel channel, long offset, ByteBuffer buffer) throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            for (int i = 0; i < Math.max(read, 0); i++) {
+                if (buffer.get(i) == '\n') {
+                    buffer.position(0).limit(i > 0 && buffer.get(i - 1) == '\r' ? i - 1 : i);
+                    return buffer;
+                }
+            }
+            if (read < buffer.capacity()) {
+                buffer.flip();
+                return buffer;
+            }
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+        }
+    }
+
+    private ByteBuffer add(FileChannel out, ByteBuffer entries, String key, int id, long offset) throws IOException {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (entries.remaining() < 2 + bytes.length + 12) {
+            entries.flip();
+            while (entries.hasRemaining()) {
+                out.write(entries);
+            }
+            entries.clear();
+            if (entries.capacity() < 2 + bytes.length + 12) {
+                entries = ByteBuffer.allocate(2 + bytes.length + 12);
+            }
+        }
+        entries.putShort((short) bytes.length).put(bytes).putInt(id).putLong(offset);
+        postings.computeIfAbsent(key, k -> new Postings()).add(id, offset);
+        return entries;
+    }
+
+    private boolean load() throws IOException {
+        if (!Files.exists(path) || Files.size(path) < HEADER_SIZE) {
+            return false;
+        }
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            sourceKey = in.readLong();
+            sourceLength = in.readLong();
+            rowCount = in.readInt();
+            entriesEnd = in.readLong();
+            if (Files.size(path) < entriesEnd) {
+                return false;
+            }
+            long position = HEADER_SIZE;
+            Map<String, String> keys = new HashMap<>();
+            byte[] bytes = new byte[256];
+            while (position < entriesEnd) {
+                int length = in.readUnsignedShort();
+                if (bytes.length < length) {
+                    bytes = new byte[length];
+                }
+                in.readFully(bytes, 0, length);
+                String key = keys.computeIfAbsent(new String(bytes, 0, length, StandardCharsets.UTF_8), k -> k);
+                postings.computeIfAbsent(key, k -> new Postings()).add(in.readInt(), in.readLong());
+                position += 2 + length + 12;
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(entriesEnd);
+        }
+        return true;
+    }
+
+    private void clear() throws IOException {
+        postings.clear();
+        sourceKey = 0;
+        sourceLength = 0;
+        rowCount = 0;
+        entriesEnd = HEADER_SIZE;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+            writeHeader(channel);
+        }
+    }
+
+    private void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(sourceKey).putLong(sourceLength).putInt(rowCount).putLong(entriesEnd);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(false);
+    }
+
+    private static long hash(String value) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        return hash;
+    }
+
+    private static class Postings {
+        private int[] ids = new int[4];
+        private long[] offsets = new long[4];
+        private int size;
+
+        void add(int id, long offset) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            ids[size] = id;
+            offsets[size] = offset;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// In-memory index of transactions by vendor. normalize() is the one rule every ledger and the
+// on-disk VendorIndex use to decide whether two vendor names match. Each vendor's transactions are
+// kept in insertion order in a set, so removing one does not scan the others.
+public class VendorLookup {
+    private final Map<String, Set<Transaction>> transactionsByVendor = new HashMap<>();
+
+    // Ignores surrounding whitespace and case, including characters whose case folds differ by locale.
+    public static String normalize(String vendor) {
+        return vendor.strip().toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+
+    public void add(Transaction transaction) {
+        transactionsByVendor.computeIfAbsent(normalize(transaction.getVendor()), key -> new LinkedHashSet<>()).add(transaction);
+    }
+
+    public void remove(Transaction transaction) {
+        String key = normalize(transaction.getVendor());
+        Set<Transaction> transactions = transactionsByVendor.get(key);
+        if (transactions != null && transactions.remove(transaction) && transactions.isEmpty()) {
+            transactionsByVendor.remove(key);
+        }
+    }
+
+    public List<Transaction> get(String vendor) {
+        Set<Transaction> transactions = transactionsByVendor.get(normalize(vendor));
+        return transactions != null ? new ArrayList<>(transactions) : new ArrayList<>();
+    }
+}
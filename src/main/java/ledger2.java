@@ -4,19 +4,28 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
-public  Ledger2 {
+class Ledger2 {
     private final List<Transaction> transactions;
+    private final VendorLookup transactionsByVendor;
+    private final RunningTotals totals;
 
-    public Ledger2r() {
+    public Ledger2() {
         transactions = new ArrayList<>();
+        transactionsByVendor = new VendorLookup();
+        totals = new RunningTotals();
     }
 
     public void addTransaction(Transaction transaction) {
         transactions.add(transaction);
+        transactionsByVendor.add(transaction);
+        totals.add(transaction.getMoney());
     }
 
     public void removeTransaction(Transaction transaction) {
-        transactions.remove(transaction);
+        if (transactions.remove(transaction)) {
+            transactionsByVendor.remove(transaction);
+            totals.remove(transaction.getMoney());
+        }
     }
 
     public List<Transaction> getTransactions() {
@@ -24,12 +33,12 @@ public  Ledger2 {
     }
 
     public List<Transaction> getDeposits() {
-        List<Transaction> collect = transactions.stream().filter(t -> t.getAmount().compareTo(BigDecimal.ZERO) > 0).collect(Collectors.toList());
+        List<Transaction> collect = transactions.stream().filter(t -> t.getMoney().signum() > 0).collect(Collectors.toList());
         return collect;
     }
 
     public List<Transaction> getPayments() {
-        List<Transaction> collect = transactions.stream().filter(t -> t.getAmount().compareTo(BigDecimal.ZERO) < 0).collect(Collectors.toList());
+        List<Transaction> collect = transactions.stream().filter(t -> t.getMoney().signum() < 0).collect(Collectors.toList());
         return collect;
     }
 
@@ -38,26 +47,23 @@ public  Ledger2 {
         LocalDate end = LocalDate.parse(endDate);
         return transactions.stream()
                 .filter(t -> {
-                    LocalDate date = LocalDate.from(t.getDate());
+                    LocalDate date = (LocalDate) t.getDate();
                     return !date.isBefore(start) && !date.isAfter(end);
                 })
                 .collect(Collectors.toList());
     }
 
     public List<Transaction> getTransactionsByVendor(String vendor) {
-        return transactions.stream().filter(t -> t.getVendor().equals(vendor)).collect(Collectors.toList());
+        return transactionsByVendor.get(vendor);
     }
 
     public List<Transaction> getTransactionsByAmount(BigDecimal amount) {
-        return transactions.stream().filter(t -> t.getAmount().equals(amount)).collect(Collectors.toList());
+        Money money = Money.of(amount);
+        return transactions.stream().filter(t -> t.getMoney().equals(money)).collect(Collectors.toList());
     }
 
     public BigDecimal getBalance() {
-        BigDecimal balance = BigDecimal.ZERO;
-        for (Transaction transaction : transactions) {
-            balance = balance.add(transaction.getAmount());
-        }
-        return balance;
+        return totals.getBalance();
     }
 
     public List<Transaction> getMonthToDateTransactions() {
@@ -90,15 +96,21 @@ public  Ledger2 {
         int index = transactions.indexOf(oldTransaction);
         if (index >= 0) {
             transactions.set(index, newTransaction);
+            transactionsByVendor.remove(oldTransaction);
+            transactionsByVendor.add(newTransaction);
+            totals.remove(oldTransaction.getMoney());
+            totals.add(newTransaction.getMoney());
         }
     }
 
     public List<Transaction> getTransactionsByAmountRange(BigDecimal startAmount, BigDecimal endAmount) {
+        Money start = Money.of(startAmount);
+        Money end = Money.of(endAmount);
         List<Transaction> result = new ArrayList<>();
         for (Transaction transaction : transactions) {
-            BigDecimal amount = transaction.getAmount();
-            if (amount.compareTo(BigDecimal.valueOf(startAmount)) >= 0) {
-                if (amount.compareTo(BigDecimal.valueOf(endAmount)) <= 0) {
+            Money amount = transaction.getMoney();
+            if (amount.compareTo(start) >= 0) {
+                if (amount.compareTo(end) <= 0) {
                     result.add(transaction);
                 }
             }
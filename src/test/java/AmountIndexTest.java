@@ -0,0 +1,59 @@
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AmountIndexTest {
+    // Amounts with sub-cent digits and repeats, so buckets hold several transactions in need of ordering.
+    @Test
+    void matchesSortedList() {
+        Random random = new Random(5);
+        AmountIndex index = new AmountIndex();
+        List<Transaction> expected = new ArrayList<>();
+        for (int id = 1; id <= 5000; id++) {
+            BigDecimal amount = BigDecimal.valueOf(random.nextInt(2000) - 1000, 3);
+            // Every tenth id is reused, as ids loaded from different files can be.
+            Transaction transaction = Transaction.restore(id % 10 == 0 ? 1 : id, Money.of(amount), LocalDate.of(2023, 1, 1),
+                    LocalTime.NOON, "row", "Vendor");
+            index.add(transaction);
+            expected.add(transaction);
+            if (random.nextInt(4) == 0) {
+                Transaction removed = expected.remove(random.nextInt(expected.size()));
+                index.remove(removed);
+            }
+        }
+        expected.sort(Comparator.comparing(Transaction::getMoney));
+
+        assertEquals(expected.get(0).getMoney(), index.lowest().getMoney());
+        assertEquals(expected.get(expected.size() - 1).getMoney(), index.highest().getMoney());
+        assertEquals(amounts(expected.subList(0, 100)), amounts(index.lowest(100)));
+        List<Transaction> reversed = new ArrayList<>(expected);
+        reversed.sort(Comparator.comparing(Transaction::getMoney).reversed());
+        assertEquals(amounts(reversed.subList(0, 100)), amounts(index.highest(100)));
+        Money min = Money.of(new BigDecimal("-0.2055"));
+        Money max = Money.of(new BigDecimal("0.3005"));
+        List<Transaction> inRange = new ArrayList<>();
+        for (Transaction transaction : expected) {
+            if (transaction.getMoney().compareTo(min) >= 0 && transaction.getMoney().compareTo(max) <= 0) {
+                inRange.add(transaction);
+            }
+        }
+        assertEquals(amounts(inRange), amounts(index.range(min, max)));
+        assertEquals(expected.size(), index.range(expected.get(0).getMoney(), index.highest().getMoney()).size());
+    }
+
+    private static List<BigDecimal> amounts(List<Transaction> transactions) {
+        List<BigDecimal> amounts = new ArrayList<>();
+        for (Transaction transaction : transactions) {
+            amounts.add(transaction.getAmount());
+        }
+        return amounts;
+    }
+}
@@ -0,0 +1,129 @@
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BankTest {
+    private static final int THREADS = 8;
+    private static final int TRANSFERS = 2000;
+    private static final BigDecimal OPENING = new BigDecimal("100000.00");
+
+    @Test
+    void transferPostsBothSides() {
+        Bank bank = new Bank("Bank", "Main Street", "555-0100");
+        Customer alice = customer(bank, 1, "Alice");
+        Customer bob = customer(bank, 2, "Bob");
+
+        bank.transfer(1, 2, new BigDecimal("12.50"), "Rent");
+
+        assertEquals(0, OPENING.subtract(new BigDecimal("12.50")).compareTo(alice.getAccount().getBalance()));
+        assertEquals(0, OPENING.add(new BigDecimal("12.50")).compareTo(bob.getAccount().getBalance()));
+        Transaction debit = alice.getAccount().getTransactions().get(1);
+        Transaction credit = bob.getAccount().getTransactions().get(1);
+        assertEquals("Transfer", debit.getType());
+        assertEquals("Bob", debit.getVendor());
+        assertEquals("Alice", credit.getVendor());
+        assertThrows(IllegalArgumentException.class, () -> bank.transfer(1, 1, BigDecimal.ONE, "Self"));
+        assertThrows(IllegalArgumentException.class, () -> bank.transfer(1, 2, BigDecimal.ZERO, "Nothing"));
+    }
+
+    // Threads move money both ways between the same accounts at once, singly and in batches over
+    // every account. None may deadlock, no posting may be lost, and no money made or destroyed.
+    @Test
+    void concurrentOppositeTransfersConserveTheTotal() throws Exception {
+        Bank bank = new Bank("Bank", "Main Street", "555-0100");
+        List<Customer> customers = List.of(customer(bank, 1, "Alice"), customer(bank, 2, "Bob"), customer(bank, 3, "Carol"));
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            results.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < TRANSFERS; i++) {
+                    if (thread % 4 == 0) {
+                        bank.transfer(1, 2, BigDecimal.ONE, "Forward");
+                    } else if (thread % 4 == 1) {
+                        bank.transfer(2, 1, new BigDecimal("2"), "Back");
+                    } else if (thread % 4 == 2) {
+                        bank.transferAll(List.of(new Transfer(1, 2, BigDecimal.ONE, "Round"),
+                                new Transfer(2, 3, BigDecimal.ONE, "Round"), new Transfer(3, 1, BigDecimal.ONE, "Round")));
+                    } else {
+                        bank.transferAll(List.of(new Transfer(3, 2, new BigDecimal("5"), "Other way"),
+                                new Transfer(2, 1, new BigDecimal("5"), "Other way")));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            // A deadlock shows up as a timeout.
+            result.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        // Two threads of each kind; each posting is one transaction on each side.
+        int each = THREADS / 4 * TRANSFERS;
+        BigDecimal alice = OPENING.subtract(BigDecimal.valueOf(each)).add(BigDecimal.valueOf(2L * each))
+                .subtract(BigDecimal.valueOf(each)).add(BigDecimal.valueOf(each)).add(BigDecimal.valueOf(5L * each));
+        BigDecimal bob = OPENING.add(BigDecimal.valueOf(each)).subtract(BigDecimal.valueOf(2L * each))
+                .add(BigDecimal.valueOf(each)).subtract(BigDecimal.valueOf(each))
+                .add(BigDecimal.valueOf(5L * each)).subtract(BigDecimal.valueOf(5L * each));
+        BigDecimal carol = OPENING.add(BigDecimal.valueOf(each)).subtract(BigDecimal.valueOf(each))
+                .subtract(BigDecimal.valueOf(5L * each));
+        assertEquals(0, alice.compareTo(customers.get(0).getAccount().getBalance()));
+        assertEquals(0, bob.compareTo(customers.get(1).getAccount().getBalance()));
+        assertEquals(0, carol.compareTo(customers.get(2).getAccount().getBalance()));
+        BigDecimal total = BigDecimal.ZERO;
+        for (Customer customer : customers) {
+            total = total.add(customer.getAccount().getBalance());
+        }
+        assertEquals(0, OPENING.multiply(BigDecimal.valueOf(3)).compareTo(total));
+        assertEquals(1 + 5 * each, customers.get(0).getAccount().getTransactionCount());
+        assertEquals(1 + 6 * each, customers.get(1).getAccount().getTransactionCount());
+        assertEquals(1 + 3 * each, customers.get(2).getAccount().getTransactionCount());
+        assertEquals(1 + 5 * each, customers.get(0).getAccount().getTransactions().size());
+    }
+
+    // A batch with one bad transfer in it must be rejected before any of the others is posted.
+    @Test
+    void failedTransferAllPostsNothing() {
+        Bank bank = new Bank("Bank", "Main Street", "555-0100");
+        List<Customer> customers = List.of(customer(bank, 1, "Alice"), customer(bank, 2, "Bob"), customer(bank, 3, "Carol"));
+        Transfer valid = new Transfer(1, 2, BigDecimal.TEN, "Valid");
+        Transfer alsoValid = new Transfer(2, 3, BigDecimal.ONE, "Valid");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> bank.transferAll(List.of(valid, alsoValid, new Transfer(3, 4, BigDecimal.ONE, "No such customer"))));
+        assertThrows(IllegalArgumentException.class,
+                () -> bank.transferAll(List.of(valid, new Transfer(3, 1, new BigDecimal("-1"), "Negative"), alsoValid)));
+        assertThrows(IllegalArgumentException.class,
+                () -> bank.transferAll(List.of(valid, alsoValid, new Transfer(3, 3, BigDecimal.ONE, "Self"))));
+
+        for (Customer customer : customers) {
+            assertEquals(0, OPENING.compareTo(customer.getAccount().getBalance()));
+            assertEquals(1, customer.getAccount().getTransactionCount());
+            assertEquals(1, customer.getAccount().getTransactions().size());
+        }
+    }
+
+    private static Customer customer(Bank bank, int id, String name) {
+        Account account = new Account();
+        account.addTransaction(new Transaction(OPENING, LocalDate.of(2023, 1, 1), LocalTime.NOON, "Opening balance", "Bank"));
+        Customer customer = new Customer(id, name, "Main Street", "555-01" + id, account);
+        bank.addCustomer(customer);
+        return customer;
+    }
+}
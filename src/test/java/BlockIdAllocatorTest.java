@@ -0,0 +1,47 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockIdAllocatorTest {
+    private static final int THREADS = 10000;
+
+    // A virtual thread per request takes an id or two and finishes; the ids skipped must not grow
+    // with the number of threads.
+    @Test
+    void shortLivedThreadsDoNotUseUpIds() throws Exception {
+        BlockIdAllocator allocator = new BlockIdAllocator(1, 1024);
+        List<Future<Integer>> ids = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < THREADS; i++) {
+                ids.add(executor.submit(allocator::next));
+            }
+        }
+        BitSet seen = new BitSet();
+        for (Future<Integer> id : ids) {
+            assertFalse(seen.get(id.get()), "id handed out twice: " + id.get());
+            seen.set(id.get());
+        }
+        int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) * 2;
+        assertTrue(allocator.limit() <= THREADS + stripes * 1024 + 1, "used ids up to " + allocator.limit());
+    }
+
+    @Test
+    void idsStayAboveAdvancedFloor() throws Exception {
+        BlockIdAllocator allocator = new BlockIdAllocator(1, 16);
+        allocator.next();
+        allocator.advancePast(5000);
+        assertTrue(allocator.next() > 5000);
+        int[] fromOther = new int[1];
+        Thread other = Thread.ofPlatform().start(() -> fromOther[0] = allocator.next());
+        other.join();
+        assertTrue(fromOther[0] > 5000);
+    }
+}
@@ -0,0 +1,157 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CSVFileHandlerCompactionTest {
+    private static final int ROWS = 2500;
+
+    @TempDir
+    Path directory;
+
+    // Transactions read before a compaction still name their own rows after it is swapped in, even
+    // those whose old id is past the number of rows the compacted file has.
+    @Test
+    void idsReadBeforeCompactionStillNameTheirRows() throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < ROWS; i++) {
+                writer.write(transaction(i, "seed" + i).toCSV());
+                writer.newLine();
+            }
+        }
+        CSVFileHandler handler = new CSVFileHandler(file.toString());
+        List<Transaction> rows = handler.readTransactionsFromFile(file.toString());
+        for (int i = 0; i < 1000; i++) {
+            handler.deleteTransactionFromFile(rows.get(i));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (TransactionJournal.readCheckpoint(Path.of(file + ".journal")) == 0 && System.nanoTime() < deadline) {
+            // Any call into the handler swaps in a finished compaction.
+            handler.readAppendedTransactions();
+            Thread.sleep(1);
+        }
+        assertTrue(TransactionJournal.readCheckpoint(Path.of(file + ".journal")) != 0, "compaction was not swapped in");
+
+        // The vendor and month indexes are rebuilt from the compacted file under the same ids.
+        Transaction kept = rows.get(1800);
+        assertEquals(kept.getId(), find(handler.searchTransactionsByVendor(kept.getVendor()), "seed1800").getId());
+        LocalDate date = (LocalDate) kept.getDate();
+        assertEquals(kept.getId(), find(handler.searchTransactionsByDate(date, date), "seed1800").getId());
+
+        handler.deleteTransactionFromFile(rows.get(1500));
+        handler.deleteTransactionFromFile(rows.get(2400));
+        handler.updateTransactionInFile(rows.get(1200), transaction(-1, "updated"));
+        Transaction added = transaction(ROWS, "added");
+        handler.writeTransactionToFile(added);
+        handler.close();
+        assertTrue(added.getId() > ROWS, "id " + added.getId() + " of a new row was used before");
+
+        CSVFileHandler reopened = new CSVFileHandler(file.toString());
+        Map<String, Transaction> byDescription = new HashMap<>();
+        for (Transaction row : reopened.readTransactionsFromFile(file.toString())) {
+            byDescription.put(row.getDescription(), row);
+        }
+        reopened.close();
+        assertEquals(ROWS - 1000 - 2 + 1, byDescription.size());
+        assertFalse(byDescription.containsKey("seed1500"));
+        assertFalse(byDescription.containsKey("seed2400"));
+        assertFalse(byDescription.containsKey("seed1200"));
+        assertEquals(rows.get(1200).getId(), byDescription.get("updated").getId());
+        assertEquals(added.getId(), byDescription.get("added").getId());
+        for (int i = 1000; i < ROWS; i++) {
+            Transaction row = byDescription.get("seed" + i);
+            if (i != 1200 && i != 1500 && i != 2400) {
+                assertEquals(rows.get(i).getId(), row.getId(), "seed" + i + " changed id");
+            }
+        }
+    }
+
+    // Another handler keeps appending while the compaction is swapped in; none of its rows may be lost
+    // between copying the tail of the file and moving the compacted file into place.
+    @Test
+    void rowsAppendedByAnotherHandlerDuringTheSwapAreKept() throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < ROWS; i++) {
+                writer.write(transaction(i, "seed" + i).toCSV());
+                writer.newLine();
+            }
+        }
+        CSVFileHandler compacting = new CSVFileHandler(file.toString());
+        List<Transaction> rows = compacting.readTransactionsFromFile(file.toString());
+        CSVFileHandler appending = new CSVFileHandler(file.toString());
+        appending.readTransactionsFromFile(file.toString());
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger appended = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread appender = new Thread(() -> {
+            try {
+                while (!stop.get()) {
+                    appending.writeTransactionToFile(transaction(appended.get(), "other" + appended.get()));
+                    appended.incrementAndGet();
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        appender.start();
+        for (int i = 0; i < 1000; i++) {
+            compacting.deleteTransactionFromFile(rows.get(i));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (TransactionJournal.readCheckpoint(Path.of(file + ".journal")) == 0 && System.nanoTime() < deadline) {
+            compacting.readAppendedTransactions();
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        stop.set(true);
+        appender.join();
+        assertEquals(null, failure.get());
+        assertTrue(TransactionJournal.readCheckpoint(Path.of(file + ".journal")) != 0, "compaction was not swapped in");
+        compacting.close();
+        appending.close();
+
+        CSVFileHandler reopened = new CSVFileHandler(file.toString());
+        Map<String, Transaction> byDescription = new HashMap<>();
+        for (Transaction row : reopened.readTransactionsFromFile(file.toString())) {
+            byDescription.put(row.getDescription(), row);
+        }
+        reopened.close();
+        for (int i = 0; i < appended.get(); i++) {
+            assertTrue(byDescription.containsKey("other" + i), "other" + i + " was lost");
+        }
+        assertEquals(ROWS - 1000 + appended.get(), byDescription.size());
+    }
+
+    private static Transaction find(List<Transaction> transactions, String description) {
+        for (Transaction transaction : transactions) {
+            if (transaction.getDescription().equals(description)) {
+                return transaction;
+            }
+        }
+        throw new AssertionError("no " + description);
+    }
+
+    private static Transaction transaction(int i, String description) {
+        return new Transaction(BigDecimal.valueOf(i), LocalDate.of(2023, 1, 1).plusDays(Math.floorMod(i, 365)),
+                LocalTime.of(9, 30), description, "Vendor" + Math.floorMod(i, 7));
+    }
+}
@@ -0,0 +1,79 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CSVFileHandlerTailTest {
+    private static final int ROWS = 2000;
+
+    @TempDir
+    Path directory;
+
+    // Two handlers stand in for two processes appending to one file while each tails the other. Every
+    // row either of them numbers has to carry the id of its position in the file, and each has to see
+    // every row of the other exactly once.
+    @Test
+    void concurrentAppendersNumberRowsByFilePosition() throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        Files.createFile(file);
+        CSVFileHandler first = new CSVFileHandler(file.toString());
+        CSVFileHandler second = new CSVFileHandler(file.toString());
+        first.readTransactionsFromFile(file.toString());
+        second.readTransactionsFromFile(file.toString());
+
+        CompletableFuture<List<Transaction>> firstSeen = CompletableFuture.supplyAsync(() -> appendAndTail(first, "first"));
+        CompletableFuture<List<Transaction>> secondSeen = CompletableFuture.supplyAsync(() -> appendAndTail(second, "second"));
+        List<Transaction> seenByFirst = firstSeen.join();
+        List<Transaction> seenBySecond = secondSeen.join();
+        seenByFirst.addAll(first.readAppendedTransactions());
+        seenBySecond.addAll(second.readAppendedTransactions());
+        first.close();
+        second.close();
+
+        List<Transaction> rows = MappedTransactionReader.read(file);
+        assertEquals(2 * ROWS, rows.size());
+        assertNumberedByPosition(rows, seenByFirst);
+        assertNumberedByPosition(rows, seenBySecond);
+    }
+
+    // Appends rows, reading the other handler's rows now and then, and returns every row it saw.
+    private static List<Transaction> appendAndTail(CSVFileHandler handler, String name) {
+        List<Transaction> seen = new ArrayList<>();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                Transaction transaction = new Transaction(BigDecimal.valueOf(i), LocalDate.of(2023, 1, 1),
+                        LocalTime.of(9, 30), name + i, "Vendor");
+                handler.writeTransactionToFileAsync(transaction);
+                seen.add(transaction);
+                if (i % 10 == 0) {
+                    seen.addAll(handler.readAppendedTransactions());
+                }
+            }
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        return seen;
+    }
+
+    private static void assertNumberedByPosition(List<Transaction> rows, List<Transaction> seen) {
+        assertEquals(rows.size(), seen.size());
+        Set<Integer> ids = new HashSet<>();
+        for (Transaction transaction : seen) {
+            assertTrue(ids.add(transaction.getId()), "row " + transaction.getId() + " seen twice");
+            assertEquals(rows.get(transaction.getId() - 1).getDescription(), transaction.getDescription(),
+                    "wrong row for id " + transaction.getId());
+        }
+    }
+}
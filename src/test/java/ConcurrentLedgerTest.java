@@ -0,0 +1,92 @@
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentLedgerTest {
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int ADDS = 5000;
+
+    // Each writer adds its rows in order and now and then replaces the one before. Every query must
+    // see, of each writer's rows, exactly the first few in order, each once, in either of its forms.
+    @Test
+    void readersSeeAPrefixOfEachWriter() throws Exception {
+        ConcurrentLedger ledger = new ConcurrentLedger();
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers.add(pool.submit(() -> {
+                Transaction previous = null;
+                for (int i = 0; i < ADDS; i++) {
+                    Transaction transaction = transaction(writer, i, "");
+                    ledger.addTransaction(transaction);
+                    if (i % 10 == 9) {
+                        ledger.updateTransaction(previous, transaction(writer, i - 1, "updated"));
+                    }
+                    previous = transaction;
+                }
+            }));
+        }
+        List<Future<Integer>> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            int reader = r;
+            readers.add(pool.submit(() -> {
+                int queries = 0;
+                while (writing.get() || queries == 0) {
+                    List<Transaction> seen = reader % 2 == 0 ? ledger.getTransactions() : ledger.getDeposits();
+                    assertPrefixes(seen);
+                    queries++;
+                }
+                return queries;
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        writing.set(false);
+        for (Future<Integer> reader : readers) {
+            assertTrue(reader.get() > 0);
+        }
+        pool.shutdown();
+
+        assertEquals(WRITERS * ADDS, ledger.getTransactionCount());
+        assertEquals(WRITERS * ADDS, ledger.getTransactions().size());
+        assertPrefixes(ledger.getTransactions());
+        assertEquals(0, ledger.getPendingChanges());
+    }
+
+    private static void assertPrefixes(List<Transaction> seen) {
+        int[] counts = new int[WRITERS];
+        boolean[][] present = new boolean[WRITERS][ADDS];
+        for (Transaction transaction : seen) {
+            int writer = transaction.getVendor().charAt(1) - '0';
+            int index = Integer.parseInt(transaction.getDescription().replace("updated", ""));
+            assertTrue(!present[writer][index], "row " + index + " of writer " + writer + " seen twice");
+            present[writer][index] = true;
+            counts[writer]++;
+        }
+        for (int writer = 0; writer < WRITERS; writer++) {
+            for (int index = 0; index < counts[writer]; index++) {
+                assertTrue(present[writer][index], "writer " + writer + " missing row " + index + " of " + counts[writer]);
+            }
+        }
+    }
+
+    private static Transaction transaction(int writer, int index, String suffix) {
+        return new Transaction(BigDecimal.valueOf(index + 1), LocalDate.of(2023, 1, 1).plusDays(index % 365),
+                LocalTime.of(9, 30), index + suffix, "w" + writer);
+    }
+}
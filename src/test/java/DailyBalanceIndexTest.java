@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DailyBalanceIndexTest {
+    // A mistyped year must not grow the window to reach it, but must still be summed.
+    @Test
+    void outlyingDatesAreSummedWithoutWideningTheWindow() {
+        DailyBalanceIndex index = new DailyBalanceIndex();
+        index.add(LocalDate.of(2023, 5, 1), Money.of(new BigDecimal("10.00")));
+        index.add(LocalDate.of(20230, 5, 1), Money.of(new BigDecimal("1.00")));
+        index.add(LocalDate.of(203, 5, 1), Money.of(new BigDecimal("2.00")));
+        index.add(LocalDate.of(2024, 1, 1), Money.of(new BigDecimal("0.005")));
+
+        assertTrue(index.getWindowDays() <= 1 << 16, "window grew to " + index.getWindowDays() + " days");
+        // Sums take the largest scale added so far, here that of 0.005.
+        assertEquals(new BigDecimal("2.000"), index.sumThrough(LocalDate.of(1000, 1, 1)));
+        assertEquals(new BigDecimal("12.000"), index.sumThrough(LocalDate.of(2023, 12, 31)));
+        assertEquals(new BigDecimal("12.005"), index.sumThrough(LocalDate.of(2024, 1, 1)));
+        assertEquals(new BigDecimal("13.005"), index.sumThrough(LocalDate.of(30000, 1, 1)));
+
+        index.remove(LocalDate.of(20230, 5, 1), Money.of(new BigDecimal("1.00")));
+        assertEquals(0, new BigDecimal("12.005").compareTo(index.sumThrough(LocalDate.of(30000, 1, 1))));
+    }
+
+    @Test
+    void windowGrowsToCoverNearbyDates() {
+        DailyBalanceIndex index = new DailyBalanceIndex();
+        for (int year = 1950; year <= 2050; year++) {
+            index.add(LocalDate.of(year, 6, 1), Money.of(BigDecimal.ONE));
+        }
+        assertEquals(0, BigDecimal.valueOf(51).compareTo(index.sumThrough(LocalDate.of(2000, 12, 31))));
+        assertEquals(0, BigDecimal.valueOf(101).compareTo(index.sumThrough(LocalDate.of(2100, 1, 1))));
+    }
+
+    // Ledgers and accounts with a handful of transactions must not each hold years of empty days.
+    @Test
+    void windowStartsSmall() {
+        DailyBalanceIndex index = new DailyBalanceIndex();
+        assertEquals(0, index.getWindowDays());
+        index.add(LocalDate.of(2023, 5, 1), Money.of(BigDecimal.ONE));
+        index.add(LocalDate.of(2023, 5, 2), Money.of(BigDecimal.ONE));
+        assertTrue(index.getWindowDays() <= 16, "window starts at " + index.getWindowDays() + " days");
+        index.add(LocalDate.of(2023, 8, 1), Money.of(BigDecimal.ONE));
+        assertTrue(index.getWindowDays() <= 256, "window grew to " + index.getWindowDays() + " days");
+        assertEquals(new BigDecimal("2"), index.sumThrough(LocalDate.of(2023, 7, 31)));
+    }
+
+    // The balance as of the last day is the ledger's balance, scale included, however the amounts are written.
+    @Test
+    void balanceThroughTheLastDayEqualsTheBalance() {
+        Ledger ledger = new Ledger();
+        assertEquals(ledger.getBalance(), ledger.balanceAsOf(LocalDate.MAX));
+        ledger.addTransaction(transaction("5", 1));
+        assertEquals(ledger.getBalance(), ledger.balanceAsOf(LocalDate.MAX));
+        ledger.addTransaction(transaction("-1.5", 2));
+        assertEquals(ledger.getBalance(), ledger.balanceAsOf(LocalDate.MAX));
+        Transaction fine = transaction("0.125", 3);
+        ledger.addTransaction(fine);
+        assertEquals(ledger.getBalance(), ledger.balanceAsOf(LocalDate.MAX));
+        ledger.addTransaction(transaction("12345678901234567890.01", 4));
+        assertEquals(ledger.getBalance(), ledger.balanceAsOf(LocalDate.MAX));
+        ledger.removeTransaction(fine);
+        assertEquals(ledger.getBalance(), ledger.balanceAsOf(LocalDate.MAX));
+        assertEquals(new BigDecimal("12345678901234567893.510"), ledger.balanceAsOf(LocalDate.MAX));
+    }
+
+    private static Transaction transaction(String amount, int day) {
+        return new Transaction(new BigDecimal(amount), LocalDate.of(2023, 1, day), LocalTime.NOON, "Row" + day, "Vendor");
+    }
+}
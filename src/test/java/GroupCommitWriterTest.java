@@ -0,0 +1,156 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupCommitWriterTest {
+    private static final int THREADS = 8;
+    private static final int RECORDS_PER_THREAD = 500;
+
+    @TempDir
+    Path directory;
+
+    // Records appended from many threads at once are batched together, but each must complete and
+    // land in the file whole, whatever the fsync policy.
+    @ParameterizedTest
+    @EnumSource(GroupCommitWriter.FsyncPolicy.class)
+    void concurrentAppendsAllCompleteAndArriveWhole(GroupCommitWriter.FsyncPolicy policy) throws Exception {
+        Path file = directory.resolve("records.csv");
+        GroupCommitWriter writer = new GroupCommitWriter(file, policy, 5);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<CompletableFuture<Void>>>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            results.add(pool.submit(() -> {
+                start.await();
+                List<CompletableFuture<Void>> futures = new ArrayList<>();
+                for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+                    futures.add(writer.append(thread + "," + i + ",padding-to-make-the-record-longer\n"));
+                }
+                return futures;
+            }));
+        }
+        start.countDown();
+        for (Future<List<CompletableFuture<Void>>> result : results) {
+            for (CompletableFuture<Void> future : result.get()) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        }
+        pool.shutdown();
+        writer.close();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(THREADS * RECORDS_PER_THREAD, lines.size());
+        Set<String> seen = new HashSet<>();
+        int[] next = new int[THREADS];
+        for (String line : lines) {
+            String[] fields = line.split(",");
+            assertEquals(3, fields.length, "torn record: " + line);
+            assertTrue(seen.add(line), "duplicate record: " + line);
+            // Each thread's records keep the order it appended them in.
+            int thread = Integer.parseInt(fields[0]);
+            assertEquals(next[thread]++, Integer.parseInt(fields[1]));
+        }
+    }
+
+    // With an interval policy a lone record must still be synced once the interval passes, without
+    // waiting for another record to come along.
+    @Test
+    void intervalPolicySyncsALoneRecord() throws Exception {
+        Path file = directory.resolve("records.csv");
+        GroupCommitWriter writer = new GroupCommitWriter(file, GroupCommitWriter.FsyncPolicy.INTERVAL, 20);
+        try {
+            writer.append("only\n").get(10, TimeUnit.SECONDS);
+        } finally {
+            writer.close();
+        }
+        assertEquals(List.of("only"), Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    // Adds made from many threads while earlier ones are still being written are numbered at once and
+    // merged into shared writes, and the ids they get match their rows in the file.
+    @Test
+    void concurrentAddsShareWrites() throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        CSVFileHandler handler = new CSVFileHandler(file.toString());
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Transaction>>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            results.add(pool.submit(() -> {
+                start.await();
+                List<Transaction> added = new ArrayList<>();
+                List<CompletableFuture<Void>> futures = new ArrayList<>();
+                for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+                    Transaction transaction = new Transaction(BigDecimal.valueOf(i), LocalDate.of(2023, 1, 1), LocalTime.NOON,
+                            thread + "-" + i, "Vendor");
+                    futures.add(handler.writeTransactionToFileAsync(transaction));
+                    added.add(transaction);
+                }
+                for (CompletableFuture<Void> future : futures) {
+                    GroupCommitWriter.await(future);
+                }
+                return added;
+            }));
+        }
+        start.countDown();
+        Map<Integer, String> expected = new HashMap<>();
+        for (Future<List<Transaction>> result : results) {
+            for (Transaction transaction : result.get(30, TimeUnit.SECONDS)) {
+                assertEquals(null, expected.put(transaction.getId(), transaction.getDescription()), "id used twice");
+            }
+        }
+        pool.shutdown();
+        long writes = handler.getWriteCount();
+        handler.close();
+
+        int adds = THREADS * RECORDS_PER_THREAD;
+        assertTrue(writes < adds, writes + " writes for " + adds + " adds");
+        CSVFileHandler reopened = new CSVFileHandler(file.toString());
+        List<Transaction> rows = reopened.readTransactionsFromFile(file.toString());
+        reopened.close();
+        assertEquals(adds, rows.size());
+        for (Transaction row : rows) {
+            assertEquals(expected.get(row.getId()), row.getDescription());
+        }
+    }
+
+    @Test
+    void closedWriterRejectsRecords() throws Exception {
+        GroupCommitWriter writer = new GroupCommitWriter(directory.resolve("records.csv"),
+                GroupCommitWriter.FsyncPolicy.EVERY_BATCH, 0);
+        writer.close();
+        assertThrows(IOException.class, () -> GroupCommitWriter.await(writer.append("late\n")));
+        // An action waiting for the record to be written still runs, so nothing waits on it forever.
+        AtomicBoolean ran = new AtomicBoolean();
+        assertThrows(IOException.class, () -> GroupCommitWriter.await(writer.append("late\n", () -> ran.set(true))));
+        assertTrue(ran.get());
+    }
+}
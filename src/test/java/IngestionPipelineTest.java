@@ -0,0 +1,117 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestionPipelineTest {
+    private static final int ROWS = 2000;
+
+    @TempDir
+    Path directory;
+
+    // Batches are parsed on several threads and can finish in any order, but must reach the file, and
+    // so get their ids, in the order of the feed.
+    @Test
+    void ingestsEveryRowInFeedOrder() throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        TransactionManager manager = new TransactionManager(file.toString());
+        IngestionPipeline pipeline = new IngestionPipeline(manager);
+        pipeline.setBatchSize(7);
+        pipeline.setParallelism(IngestionPipeline.Stage.PARSE, 4);
+        assertThrows(IllegalArgumentException.class, () -> pipeline.setParallelism(IngestionPipeline.Stage.WRITE, 2));
+        StringBuilder feed = new StringBuilder();
+        for (int i = 0; i < ROWS; i++) {
+            feed.append(transaction(i, "fed").toCSV()).append('\n');
+            if (i == ROWS / 2) {
+                feed.append("not a transaction\n");
+            }
+        }
+
+        assertEquals(ROWS, pipeline.ingest(new BufferedReader(new StringReader(feed.toString()))));
+        assertEquals(1, pipeline.getRejectedRows());
+        assertEquals(ROWS, manager.getAllTransactions().size());
+        for (int i = 0; i < ROWS; i++) {
+            Transaction row = manager.getTransactionById(i + 1);
+            assertNotNull(row, "no row for id " + (i + 1));
+            assertEquals("fed" + i, row.getDescription());
+        }
+        manager.close();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(transaction(i, "fed").toCSV(), lines.get(i));
+        }
+    }
+
+    // Batches are written on the write thread and listed later on the index thread, so a compaction
+    // swapped in between must leave the ids of batches not listed yet as the file gave them.
+    @Test
+    void batchesWrittenDuringCompactionKeepTheirFileIds() throws Exception {
+        Path file = writeRows(ROWS);
+        TransactionManager manager = new TransactionManager(file.toString());
+        for (int id = 1; id <= ROWS; id += 2) {
+            manager.deleteTransaction(manager.getTransactionById(id));
+        }
+        IngestionPipeline pipeline = new IngestionPipeline(manager);
+        pipeline.setBatchSize(5);
+        int fed = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!swapped(file) && System.nanoTime() < deadline) {
+            StringBuilder feed = new StringBuilder();
+            for (int i = 0; i < 50; i++) {
+                feed.append(transaction(fed++, "fed").toCSV()).append('\n');
+            }
+            pipeline.ingest(new BufferedReader(new StringReader(feed.toString())));
+        }
+        assertTrue(swapped(file), "compaction was not swapped in");
+        List<Transaction> expected = new ArrayList<>(manager.getAllTransactions());
+        manager.close();
+        // The snapshot holds the ids as the manager had them; the file and journal are what count.
+        Files.delete(directory.resolve("transactions.csv.snapshot"));
+
+        TransactionManager reloaded = new TransactionManager(file.toString());
+        assertEquals(ROWS / 2 + fed, reloaded.getAllTransactions().size());
+        for (Transaction transaction : expected) {
+            Transaction row = reloaded.getTransactionById(transaction.getId());
+            assertNotNull(row, "no row for id " + transaction.getId());
+            assertEquals(transaction.toCSV(), row.toCSV(), "wrong row for id " + transaction.getId());
+        }
+        reloaded.close();
+    }
+
+    // A swapped-in compaction leaves a checkpoint as the first journal record.
+    private static boolean swapped(Path file) throws Exception {
+        return TransactionJournal.readCheckpoint(Path.of(file + ".journal")) != 0;
+    }
+
+    private Path writeRows(int rows) throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write(transaction(i, "row").toCSV());
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+    private static Transaction transaction(int i, String description) {
+        return new Transaction(BigDecimal.valueOf(i), LocalDate.of(2023, 1, 1).plusDays(i % 365), LocalTime.of(9, 30),
+                description + i, "Vendor" + (i % 7));
+    }
+}
@@ -0,0 +1,83 @@
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerTest {
+    // A copy of the stored row under the same id must remove the stored transaction from every index.
+    @Test
+    void removingAnEqualCopyRemovesTheStoredTransaction() {
+        Ledger ledger = new Ledger();
+        Transaction stored = new Transaction(new BigDecimal("12.50"), LocalDate.of(2023, 3, 1), LocalTime.of(9, 30),
+                "Lunch", "Cafe");
+        ledger.addTransaction(stored);
+        Transaction copy = Transaction.restore(stored.getId(), Money.of(new BigDecimal("12.50")), LocalDate.of(2023, 3, 1),
+                LocalTime.of(9, 30), "Lunch", "Cafe");
+
+        ledger.removeTransaction(copy);
+
+        assertNull(ledger.getTransactionById(stored.getId()));
+        assertEquals(0, ledger.getTransactionCount());
+        assertTrue(ledger.getTransactionsByDateRange("2023-01-01", "2024-12-31").isEmpty());
+        assertTrue(ledger.getTransactionsByVendor("Cafe").isEmpty());
+        assertTrue(ledger.getTransactionsByAmount(new BigDecimal("12.50")).isEmpty());
+        assertNull(ledger.getHighestTransaction());
+        assertEquals(0, BigDecimal.ZERO.compareTo(ledger.balanceAsOf(LocalDate.of(2024, 12, 31))));
+    }
+
+    // A transaction holding a stored row's id but another row, e.g. one read before the id was
+    // reused, must not remove the stored row.
+    @Test
+    void removingADifferentRowWithTheSameIdChangesNothing() {
+        Ledger ledger = new Ledger();
+        Transaction stored = new Transaction(BigDecimal.TEN, LocalDate.of(2023, 3, 1), LocalTime.of(9, 30), "Lunch", "Cafe");
+        ledger.addTransaction(stored);
+
+        ledger.removeTransaction(Transaction.restore(stored.getId(), Money.of(BigDecimal.ONE), LocalDate.of(2024, 6, 1),
+                LocalTime.NOON, "Dinner", "Bistro"));
+
+        assertEquals(1, ledger.getTransactionCount());
+        assertEquals(stored, ledger.getTransactionById(stored.getId()));
+    }
+
+    // CSVFileHandler gives a transaction its row's id when appending it, which the CLI does after adding
+    // it to the ledger. Removing it must still remove it, and nothing else.
+    @Test
+    void removingATransactionWhoseIdWasReassignedRemovesIt() {
+        Ledger ledger = new Ledger();
+        Transaction added = new Transaction(BigDecimal.TEN, LocalDate.of(2023, 3, 1), LocalTime.of(9, 30), "Lunch", "Cafe");
+        Transaction other = new Transaction(BigDecimal.ONE, LocalDate.of(2023, 3, 2), LocalTime.of(9, 30), "Coffee", "Cafe");
+        ledger.addTransaction(added);
+        ledger.addTransaction(other);
+        int oldId = added.getId();
+        added.setId(other.getId() + 1000);
+
+        ledger.removeTransaction(added);
+
+        assertEquals(1, ledger.getTransactionCount());
+        assertEquals(List.of(other), ledger.getTransactions());
+        assertEquals(List.of(other), ledger.getTransactionsByVendor("Cafe"));
+        assertNull(ledger.getTransactionById(oldId));
+        assertNull(ledger.getTransactionById(added.getId()));
+        assertEquals(other, ledger.getTransactionById(other.getId()));
+        assertEquals(0, BigDecimal.ONE.compareTo(ledger.getBalance()));
+    }
+
+    @Test
+    void removingAnUnknownTransactionChangesNothing() {
+        Ledger ledger = new Ledger();
+        Transaction stored = new Transaction(BigDecimal.TEN, LocalDate.of(2023, 3, 1), LocalTime.of(9, 30), "Lunch", "Cafe");
+        ledger.addTransaction(stored);
+
+        ledger.removeTransaction(new Transaction(BigDecimal.ONE, LocalDate.of(2023, 3, 1), LocalTime.of(9, 30), "Other", "Cafe"));
+
+        assertEquals(1, ledger.getTransactionCount());
+        assertEquals(1, ledger.getTransactionsByVendor("Cafe").size());
+    }
+}
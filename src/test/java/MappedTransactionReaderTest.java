@@ -0,0 +1,49 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MappedTransactionReaderTest {
+    private static final String[] LINES = {
+            "12.50,2023-03-01,09:30,Lunch,Cafe",
+            "-7,2023-02-28,23:59:59,Refund,Shop",
+            "+0.125,2024-02-29,00:00:00.5,Split,Bank",
+            "123456789012345678901234.5,2023-01-01,12:00,Huge,Bank",
+            "1.5,2023-02-29,12:00,Not a leap year,Bank",
+            "1.5,2023-13-01,12:00,Bad month,Bank",
+            "1.5,2023-01-01,24:00,Bad hour,Bank",
+            "1.5,2023-01-01,12:00:00.,Empty fraction,Bank",
+            "1..5,2023-01-01,12:00,Two points,Bank",
+            "١٢,2023-01-01,12:00,Arabic digits,Bank",
+            "3,2023-01-01,12:00,Café,Crème",
+            "3,2023-01-01,12:00,Too,many,fields",
+    };
+
+    // The reader parses the mapped bytes with the same field parsers as TransactionParser, so both
+    // accept and reject the same rows with the same values.
+    @Test
+    void readsRowsAsTransactionParserDoes(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        Files.write(file, List.of(LINES), StandardCharsets.UTF_8);
+
+        List<String> expected = new ArrayList<>();
+        for (String line : LINES) {
+            Transaction transaction = TransactionParser.parse(line);
+            if (transaction != null) {
+                expected.add(transaction.toCSV());
+            }
+        }
+        List<String> read = new ArrayList<>();
+        for (Transaction transaction : MappedTransactionReader.read(file)) {
+            read.add(transaction.toCSV());
+        }
+        assertEquals(expected, read);
+        assertEquals(5, read.size());
+    }
+}
@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MonthPartitionedStoreTest {
+    @TempDir
+    Path directory;
+
+    // The segments are only a copy of the file, so deleting them while the file is closed costs a
+    // rebuild on the next query and nothing else.
+    @Test
+    void deletedSegmentsAreRebuiltFromTheFile() throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 90; i++) {
+                writer.write(new Transaction(BigDecimal.valueOf(i), LocalDate.of(2023, 1, 1).plusDays(i), LocalTime.NOON,
+                        "row", "Vendor").toCSV());
+                writer.newLine();
+            }
+        }
+        CSVFileHandler handler = new CSVFileHandler(file.toString());
+        List<Transaction> february = handler.searchTransactionsByDate(LocalDate.of(2023, 2, 1), LocalDate.of(2023, 2, 28));
+        BigDecimal total = handler.getMonthTotal(YearMonth.of(2023, 2));
+        handler.close();
+        assertEquals(28, february.size());
+        assertEquals(0, BigDecimal.valueOf(31 * 28 + 28 * 27 / 2).compareTo(total));
+
+        Path months = directory.resolve("transactions.csv.months");
+        try (Stream<Path> files = Files.walk(months)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+
+        CSVFileHandler reopened = new CSVFileHandler(file.toString());
+        List<Transaction> rebuilt = reopened.searchTransactionsByDate(LocalDate.of(2023, 2, 1), LocalDate.of(2023, 2, 28));
+        assertEquals(0, total.compareTo(reopened.getMonthTotal(YearMonth.of(2023, 2))));
+        reopened.close();
+        assertEquals(february.size(), rebuilt.size());
+        for (int i = 0; i < rebuilt.size(); i++) {
+            assertEquals(february.get(i).getId(), rebuilt.get(i).getId());
+            assertEquals(february.get(i).toCSV(), rebuilt.get(i).toCSV());
+        }
+    }
+}
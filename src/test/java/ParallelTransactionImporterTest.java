@@ -0,0 +1,40 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParallelTransactionImporterTest {
+    private static final int MIN_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final String ROW = "1234,2023-01-01,12:00,Row,Vendor\n";
+
+    // Rows appended after the length was taken must be left out, even when a chunk boundary is looked
+    // for in the last row the length cuts into.
+    @Test
+    void readsNothingPastTheLength(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        // The first row is padded so that a row starts one byte before the first chunk boundary.
+        String first = "1,2023-01-01,12:00,First,Vendor" + "x".repeat((MIN_CHUNK_SIZE - 33) % 33) + "\n";
+        int rowsBefore = 1 + (MIN_CHUNK_SIZE - 1 - first.length()) / ROW.length();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(first);
+            for (int i = 0; i < rowsBefore + 100; i++) {
+                writer.write(ROW);
+            }
+        }
+        assertEquals(0, (MIN_CHUNK_SIZE - 1 - first.length()) % ROW.length());
+
+        // The length ends three bytes into that row, as if the rest were appended after it was taken.
+        ForkJoinPool pool = new ForkJoinPool(2);
+        List<Transaction> rows = ParallelTransactionImporter.read(file, pool, MIN_CHUNK_SIZE + 2);
+        pool.shutdown();
+
+        assertEquals(rowsBefore, rows.size());
+    }
+}
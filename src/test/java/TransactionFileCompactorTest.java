@@ -0,0 +1,67 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionFileCompactorTest {
+    @TempDir
+    Path directory;
+
+    // Recovery run while a compaction is still going, e.g. by another handler opening the file, must
+    // leave its temporary file alone but still clear out ones nobody owns.
+    @Test
+    void recoveryKeepsTheTemporaryFileOfARunningCompaction() throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        Path journal = directory.resolve("transactions.csv.journal");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 10; i++) {
+                writer.write(new Transaction(BigDecimal.valueOf(i), LocalDate.of(2023, 1, 1), LocalTime.NOON, "row" + i,
+                        "Vendor").toCSV());
+                writer.newLine();
+            }
+        }
+        Files.createFile(journal);
+        Path abandoned = directory.resolve("transactions.csv.compact.1");
+        Files.writeString(abandoned, "left by a crash\n");
+
+        Map<Integer, Transaction> overrides = new HashMap<>();
+        overrides.put(3, null);
+        TransactionFileCompactor compactor = new TransactionFileCompactor(file, journal, Files.size(file), 10, 0,
+                overrides, row -> row);
+        compactor.start();
+        assertTrue(compactor.awaitRewrite());
+
+        TransactionFileCompactor.recover(file, journal);
+        assertFalse(Files.exists(abandoned));
+        assertEquals(1, temporaryFiles().size(), "the running compaction's file was removed");
+
+        assertTrue(compactor.swap());
+        assertEquals(0, temporaryFiles().size());
+        List<String> rows = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(9, rows.size());
+        assertFalse(String.join("\n", rows).contains("row2"));
+    }
+
+    private List<Path> temporaryFiles() throws Exception {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "transactions.csv.compact.*")) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+}
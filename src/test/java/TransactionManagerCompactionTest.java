@@ -0,0 +1,96 @@
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionManagerCompactionTest {
+    private static final int ROWS = 2000;
+
+    @TempDir
+    Path directory;
+
+    // Deleting half the rows starts a background compaction, which is swapped in by whichever append
+    // finds it finished. Every row appended around the swap must keep the id of its row in the file,
+    // or its later update is journaled against another row.
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void appendsDuringCompactionKeepTheirFileIds(boolean columnar) throws Exception {
+        Path file = writeRows(ROWS);
+        TransactionManager manager = new TransactionManager(file.toString(), columnar);
+        for (int id = 1; id <= ROWS; id += 2) {
+            manager.deleteTransaction(manager.getTransactionById(id));
+        }
+        List<Transaction> added = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!swapped(file) && System.nanoTime() < deadline) {
+            add(manager, added);
+            Thread.sleep(1);
+        }
+        assertTrue(swapped(file), "compaction was not swapped in");
+        for (int i = 0; i < 10; i++) {
+            add(manager, added);
+        }
+        // A table hands out copies, so the added rows are fetched again to get their current ids.
+        List<Transaction> all = manager.getAllTransactions();
+        added = new ArrayList<>(all.subList(all.size() - added.size(), all.size()));
+        for (Transaction transaction : added) {
+            Transaction updated = new Transaction(transaction.getAmount().negate(), LocalDate.of(2024, 1, 1),
+                    LocalTime.NOON, "updated", transaction.getVendor());
+            manager.updateTransaction(transaction, updated);
+        }
+        manager.close();
+        // The snapshot holds the ids as the manager had them; the file and journal are what count.
+        Files.delete(directory.resolve("transactions.csv.snapshot"));
+
+        TransactionManager reloaded = new TransactionManager(file.toString());
+        assertEquals(ROWS / 2 + added.size(), reloaded.getAllTransactions().size());
+        for (int i = 0; i < added.size(); i++) {
+            Transaction row = reloaded.getTransactionById(added.get(i).getId());
+            assertNotNull(row, "no row for id " + added.get(i).getId());
+            assertEquals("updated", row.getDescription());
+            assertEquals(0, row.getAmount().compareTo(BigDecimal.valueOf(-i)), "wrong row for id " + row.getId());
+        }
+        reloaded.close();
+    }
+
+    private static void add(TransactionManager manager, List<Transaction> added) {
+        Transaction transaction = transaction(added.size(), "added");
+        manager.addTransaction(transaction);
+        added.add(transaction);
+    }
+
+    // A swapped-in compaction leaves a checkpoint as the first journal record.
+    private static boolean swapped(Path file) throws Exception {
+        return TransactionJournal.readCheckpoint(Path.of(file + ".journal")) != 0;
+    }
+
+    private Path writeRows(int rows) throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write(transaction(i, "row").toCSV());
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+    private static Transaction transaction(int i, String description) {
+        return new Transaction(BigDecimal.valueOf(i), LocalDate.of(2023, 1, 1).plusDays(i % 365), LocalTime.of(9, 30),
+                description, "Vendor" + (i % 7));
+    }
+}
@@ -0,0 +1,107 @@
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionManagerTailingTest {
+    private static final int ROWS = 2500;
+
+    @TempDir
+    Path directory;
+
+    // A second handler stands in for another process. Rows it appends must show up in a tailing
+    // manager's list and totals under the ids the file gives them, and so must the file it leaves
+    // behind after deleting enough rows to compact and replace it.
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void tailingManagerSeesAnotherHandlersChanges(boolean columnar) throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < ROWS; i++) {
+                writer.write(transaction(i, "seed").toCSV());
+                writer.newLine();
+            }
+        }
+        TransactionManager manager = new TransactionManager(file.toString(), columnar);
+        manager.startTailing();
+        CSVFileHandler other = new CSVFileHandler(file.toString());
+        List<Transaction> rows = other.readTransactionsFromFile(file.toString());
+
+        Map<Integer, Transaction> expected = new HashMap<>();
+        for (Transaction row : rows) {
+            expected.put(row.getId(), row);
+        }
+        for (int i = 0; i < 5; i++) {
+            Transaction appended = transaction(ROWS + i, "appended");
+            other.writeTransactionToFile(appended);
+            expected.put(appended.getId(), appended);
+        }
+        awaitContents(manager, expected);
+
+        // Enough deletes start a compaction, which the other handler swaps in on a later call.
+        for (int i = 0; i < 1000; i++) {
+            other.deleteTransactionFromFile(rows.get(i));
+            expected.remove(rows.get(i).getId());
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (TransactionJournal.readCheckpoint(Path.of(file + ".journal")) == 0 && System.nanoTime() < deadline) {
+            other.readAppendedTransactions();
+            Thread.sleep(1);
+        }
+        assertTrue(TransactionJournal.readCheckpoint(Path.of(file + ".journal")) != 0, "compaction was not swapped in");
+        Transaction afterSwap = transaction(ROWS + 5, "after swap");
+        other.writeTransactionToFile(afterSwap);
+        expected.put(afterSwap.getId(), afterSwap);
+        awaitContents(manager, expected);
+
+        other.close();
+        manager.stopTailing();
+        manager.close();
+    }
+
+    // The tailer only notices the change some time after it is made, so the manager is polled.
+    private static void awaitContents(TransactionManager manager, Map<Integer, Transaction> expected) throws Exception {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Transaction transaction : expected.values()) {
+            total = total.add(transaction.getAmount());
+        }
+        BigDecimal expectedTotal = total;
+        awaitTrue(() -> manager.getAllTransactions().size() == expected.size()
+                && manager.getTotalAmount().compareTo(expectedTotal) == 0);
+        assertEquals(expected.size(), manager.getAllTransactions().size());
+        assertEquals(0, expectedTotal.compareTo(manager.getTotalAmount()));
+        for (Transaction transaction : expected.values()) {
+            Transaction row = manager.getTransactionById(transaction.getId());
+            assertNotNull(row, "no row for id " + transaction.getId());
+            assertEquals(transaction.toCSV(), row.toCSV(), "wrong row for id " + transaction.getId());
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static Transaction transaction(int i, String description) {
+        return new Transaction(BigDecimal.valueOf(i), LocalDate.of(2023, 1, 1).plusDays(i % 365), LocalTime.of(9, 30),
+                description + i, "Vendor" + (i % 7));
+    }
+}
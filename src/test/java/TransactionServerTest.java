@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionServerTest {
+    private static final int REQUESTS = 200;
+
+    @TempDir
+    Path directory;
+
+    // Concurrent changes wait for their fsync outside the server's lock; each must still be answered
+    // only once it is in the file, with an id no other request got.
+    @Test
+    void concurrentChangesAreWrittenBeforeTheyAreAnswered() throws Exception {
+        Path file = directory.resolve("transactions.csv");
+        TransactionManager manager = new TransactionManager(file.toString());
+        TransactionServer server = new TransactionServer(manager, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        HttpClient client = HttpClient.newHttpClient();
+        String base = "http://localhost:" + server.getAddress().getPort();
+        try {
+            List<CompletableFuture<HttpResponse<String>>> posts = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                posts.add(client.sendAsync(request(base + "/transactions", "POST", i), HttpResponse.BodyHandlers.ofString()));
+            }
+            Set<Integer> ids = new HashSet<>();
+            for (CompletableFuture<HttpResponse<String>> post : posts) {
+                HttpResponse<String> response = post.join();
+                assertEquals(201, response.statusCode());
+                assertTrue(ids.add(Integer.parseInt(response.body().trim())), "id given out twice: " + response.body());
+            }
+
+            List<CompletableFuture<HttpResponse<String>>> changes = new ArrayList<>();
+            for (int id : ids) {
+                String method = id % 2 == 0 ? "DELETE" : "PUT";
+                changes.add(client.sendAsync(request(base + "/transactions/" + id, method, 1000), HttpResponse.BodyHandlers.ofString()));
+            }
+            for (CompletableFuture<HttpResponse<String>> change : changes) {
+                assertEquals(200, change.join().statusCode());
+            }
+            HttpResponse<String> missing = client.send(request(base + "/transactions/" + (REQUESTS + 1), "DELETE", 0),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(404, missing.statusCode());
+        } finally {
+            server.stop(0);
+            manager.close();
+        }
+
+        TransactionManager reloaded = new TransactionManager(file.toString());
+        assertEquals(REQUESTS / 2, reloaded.getAllTransactions().size());
+        assertEquals(0, BigDecimal.valueOf(1000L * REQUESTS / 2).compareTo(reloaded.getTotalAmount()));
+        reloaded.close();
+    }
+
+    private static HttpRequest request(String uri, String method, int amount) {
+        String form = "amount=" + amount + "&date=2023-05-01&time=09:30&description=Lunch&vendor=Cafe";
+        HttpRequest.BodyPublisher body = method.equals("DELETE") ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(form);
+        return HttpRequest.newBuilder(URI.create(uri))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .method(method, body)
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionSlotsTest {
+    // Random positional and by-transaction changes, checked against an ArrayList doing the same.
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void matchesArrayList(boolean table) {
+        Random random = new Random(17);
+        TransactionSlots slots = new TransactionSlots(table ? new TransactionTable() : new ArrayList<>());
+        List<Transaction> expected = new ArrayList<>();
+        int nextId = 1;
+        for (int step = 0; step < 20000; step++) {
+            int operation = random.nextInt(10);
+            if (expected.isEmpty() || operation < 3) {
+                Transaction transaction = transaction(nextId++);
+                slots.add(transaction);
+                expected.add(transaction);
+            } else if (operation == 3) {
+                int index = random.nextInt(expected.size());
+                Transaction transaction = transaction(nextId++);
+                assertEquals(expected.set(index, transaction).getId(), slots.set(index, transaction).getId());
+            } else if (operation == 4) {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index).getId(), slots.remove(index).getId());
+            } else if (operation == 5) {
+                Transaction transaction = expected.remove(random.nextInt(expected.size()));
+                assertEquals(transaction.getId(), slots.delete(transaction).getId());
+            } else if (operation == 6) {
+                int index = random.nextInt(expected.size());
+                assertEquals(index, slots.indexOf(expected.get(index)));
+            } else if (operation == 7 && random.nextInt(50) == 0) {
+                int index = random.nextInt(expected.size() + 1);
+                Transaction transaction = transaction(nextId++);
+                slots.add(index, transaction);
+                expected.add(index, transaction);
+            } else {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.get(index).getId(), slots.get(index).getId());
+            }
+            assertEquals(expected.size(), slots.size());
+        }
+        for (int index = 0; index < expected.size(); index++) {
+            assertEquals(expected.get(index).getId(), slots.get(index).getId());
+            assertEquals(expected.get(index).getId(), slots.getById(expected.get(index).getId()).getId());
+        }
+    }
+
+    // Ids can be changed after a transaction is added, as when a file handler numbers an appended row.
+    // The transaction is still found by identity, and a lookup by its old id notices the change and
+    // brings the id index up to date.
+    @Test
+    void idsChangedAfterAddingAreFollowed() {
+        TransactionSlots slots = new TransactionSlots(new ArrayList<>());
+        Transaction first = transaction(1);
+        Transaction second = transaction(2);
+        slots.add(first);
+        slots.add(second);
+
+        first.setId(2);
+        assertEquals(second, slots.getById(2));
+        assertTrue(slots.contains(first));
+        assertEquals(first, slots.delete(first));
+        assertNull(slots.getById(1));
+        assertEquals(second, slots.getById(2));
+
+        second.setId(7);
+        assertNull(slots.getById(2));
+        assertEquals(second, slots.getById(7));
+        assertEquals(List.of(second), slots);
+    }
+
+    private static Transaction transaction(int id) {
+        return Transaction.restore(id, Money.of(BigDecimal.valueOf(id)), LocalDate.of(2023, 1, 1), LocalTime.NOON,
+                "row" + id, "Vendor");
+    }
+}